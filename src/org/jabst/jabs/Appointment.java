@@ -6,6 +6,8 @@ import java.time.Duration;
 
 /** Holds information about an appointment */
 public class Appointment {
+	/** ID from the database, or -1 if the appointment has not been saved */
+	private long appointmentID = -1;
 	private Date dateAndTime;
 	/** This should refer to a valid type ID from the database */
 	int appointmentType;// that enum tho
@@ -30,13 +32,31 @@ public class Appointment {
 		this(DayOfWeekConversion.wd2cal(weekDate).getTime(), appointmentType, employeeID, customer);
 	}
 
+	public long getAppointmentID() {
+		return appointmentID;
+	}
+
+	/** Set by DatabaseManager when the appointment is read or saved */
+	void setAppointmentID(long appointmentID) {
+		this.appointmentID = appointmentID;
+	}
+
 	public Date getDate() {
 		return dateAndTime;
 	}
 
-	public Duration getDuration() {
-		// Ask the appointment type for the duration
-		return AppointmentType.getByID(appointmentType).getDuration();
+	/** @return How long the appointment's type goes for at the business
+	  * dbm is connected to, or the default duration if the type is not
+	  * known */
+	public Duration getDuration(DatabaseManager dbm) {
+		// Ask the business' appointment types for the duration
+		return dbm.getAppointmentDuration(appointmentType);
+	}
+
+	/** @return When the appointment finishes, going by its type's duration
+	  * at the business dbm is connected to */
+	public Date getEndDate(DatabaseManager dbm) {
+		return new Date(dateAndTime.getTime() + getDuration(dbm).toMillis());
 	}
 
 	public int getAppointmentType() {
@@ -47,6 +67,12 @@ public class Appointment {
 		return employeeID;
 	}
 
+	/** Set by EmployeeManager when it picks the employee for an appointment
+	  * that asked for any employee */
+	void setEmployeeID(long employeeID) {
+		this.employeeID = employeeID;
+	}
+
 	public Customer getCustomer() {
 		return customer;
 	}
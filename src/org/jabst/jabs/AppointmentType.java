@@ -1,11 +1,16 @@
 package org.jabst.jabs;
 
 import java.time.Duration;
+import java.sql.SQLException;
 
 /** An AppointmentType represents a kind of appointment that can be booked
   * with a business.
   */
 public class AppointmentType {
+    /** How long appointments go for when their type is not known, and the
+      * duration types had before the database stored durations */
+    public static final Duration DEFAULT_DURATION = Duration.ofHours(1);
+
     /** Unique ID from database */
     private int typeID;
     /** How long the appointment goes for @see java.time.Duration */
@@ -31,16 +36,31 @@ public class AppointmentType {
     public String getHumanReadableName() { return humanReadableName; }
     public int getCostCents() { return costCents; }
     
-    /** Saves this AppointmentType back to the database, overwriting it if it
-        already exists */
+    /** Saves this AppointmentType back to the database, overwriting the
+        type with the same ID. New types are added with
+        DatabaseManager.addAppointmentType instead.
+        @return Whether the type existed and was saved */
     public boolean saveToDatabase(DatabaseManager dbm) {
-        // NYI: dbm.saveAppointmentType(this);
-        return true;
+        try {
+            return dbm.saveAppointmentType(this);
+        } catch (SQLException sqle) {
+            sqle.printStackTrace();
+            return false;
+        }
     }
     
-    /** Asks the database for the AppointmentType with the given ID */
-    public static AppointmentType getByID(int id) {
-        // NYI: dbm.getAppointmentTypeByID(id)
-        return null;
+    /** Gets the AppointmentType with the given ID from the business dbm is
+      * connected to. The types are kept in memory, so this does not
+      * touch the database.
+      * @return The type, or null if there is no such type
+      * @throws SQLException If dbm is not connected to a business */
+    public static AppointmentType getByID(DatabaseManager dbm, int id)
+        throws SQLException
+    {
+        return dbm.getAppointmentType(id);
+    }
+
+    public String toString() {
+        return humanReadableName+" #"+typeID;
     }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package org.jabst.jabs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/** The AppointmentTypes of one business, indexed by their ID.
+  * DatabaseManager loads it when the business' database is opened and
+  * updates it whenever it writes an appointment type, so looking up a type
+  * never touches the database.
+  * Lookups read an array that is never changed once published. Writes build
+  * a new array and swap it in, so readers on any thread see either the
+  * whole old set of types or the whole new one.
+  */
+class AppointmentTypeRegistry {
+    /** Types by TYPE_ID. Null where there is no type with that ID. */
+    private volatile AppointmentType[] byID = new AppointmentType[0];
+
+    /** @return The type with the given ID, or null if there is none */
+    AppointmentType get(int typeID) {
+        AppointmentType[] types = byID;
+        if (typeID < 0 || typeID >= types.length) {
+            return null;
+        }
+        return types[typeID];
+    }
+
+    /** @return All the types, in order of ID */
+    List<AppointmentType> getAll() {
+        ArrayList<AppointmentType> all = new ArrayList<AppointmentType>();
+        for (AppointmentType type : byID) {
+            if (type != null) {
+                all.add(type);
+            }
+        }
+        return Collections.unmodifiableList(all);
+    }
+
+    /** @return The longest duration of any type, and at least the default
+      * duration */
+    Duration getLongestDuration() {
+        Duration longest = AppointmentType.DEFAULT_DURATION;
+        for (AppointmentType type : byID) {
+            if (type != null && type.getDuration().compareTo(longest) > 0) {
+                longest = type.getDuration();
+            }
+        }
+        return longest;
+    }
+
+    /** @return How long appointments of the type go for, or the default
+      * duration if there is no such type */
+    Duration getDuration(int typeID) {
+        AppointmentType type = get(typeID);
+        return type == null ? AppointmentType.DEFAULT_DURATION
+            : type.getDuration();
+    }
+
+    /** Replaces every type with the given ones */
+    synchronized void replaceAll(Collection<AppointmentType> types) {
+        int maxID = -1;
+        for (AppointmentType type : types) {
+            maxID = Math.max(maxID, type.getTypeID());
+        }
+        AppointmentType[] next = new AppointmentType[maxID + 1];
+        for (AppointmentType type : types) {
+            next[type.getTypeID()] = type;
+        }
+        byID = next;
+    }
+
+    /** Adds the type, or replaces the one with the same ID */
+    synchronized void put(AppointmentType type) {
+        AppointmentType[] types = byID;
+        AppointmentType[] next = Arrays.copyOf(
+            types, Math.max(types.length, type.getTypeID() + 1)
+        );
+        next[type.getTypeID()] = type;
+        byID = next;
+    }
+}
@@ -0,0 +1,55 @@
+package org.jabst.jabs;
+
+/** Decides which employee an appointment that asks for any employee goes
+  * to. Each employee free for the appointment is ranked, and the one with
+  * the lowest rank gets it, or the lowest ID of those tied.
+  * An employee's rank may only depend on the employee and their Stats,
+  * so that it only changes when they are booked or assigned.
+  * See EmployeeManager.setAssignmentStrategy.
+  */
+public interface AssignmentStrategy {
+    /** What is known about each employee in the week being booked */
+    interface Stats {
+        /** @return How many hour long slots the employee is booked in */
+        int getLoad(long employeeID);
+
+        /** @return When the employee was last assigned an appointment, as a
+          * count that goes up with each assignment, or 0 if never */
+        long getLastAssigned(long employeeID);
+    }
+
+    /** @return The employee's rank; lower ranks are chosen first */
+    long rank(long employeeID, Stats stats);
+
+    /** Gives appointments to the employee with the fewest hours booked this
+      * week, spreading the load evenly */
+    AssignmentStrategy LEAST_LOADED = new AssignmentStrategy() {
+        @Override
+        public long rank(long employeeID, Stats stats) {
+            return stats.getLoad(employeeID);
+        }
+    };
+
+    /** Gives appointments to each free employee in turn, starting with those
+      * never assigned one */
+    AssignmentStrategy ROUND_ROBIN = new AssignmentStrategy() {
+        @Override
+        public long rank(long employeeID, Stats stats) {
+            return stats.getLastAssigned(employeeID);
+        }
+    };
+
+    /** @return A strategy giving appointments to the employee whenever they
+      * are free, and using otherwise to choose when they are not */
+    static AssignmentStrategy preferring(final long employeeID,
+        final AssignmentStrategy otherwise)
+    {
+        return new AssignmentStrategy() {
+            @Override
+            public long rank(long id, Stats stats) {
+                return id == employeeID ?
+                    Long.MIN_VALUE : otherwise.rank(id, stats);
+            }
+        };
+    }
+}
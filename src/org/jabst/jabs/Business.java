@@ -3,13 +3,15 @@ package org.jabst.jabs;
 public class Business {
 
 	// Variables
+	String username;
 	String businessName;
 	String businessOwner;
 	String address;
 	String phone;
 
 	// Methods
-		Business(String businessName, String businessOwner, String address, String phone){
+		Business(String username, String businessName, String businessOwner, String address, String phone){
+			this.username = username;
 			this.businessName = businessName;
 			this.businessOwner = businessOwner;
 			this.address = address;
@@ -17,6 +19,10 @@ public class Business {
 		}
 
 	
+	public String getUsername() {
+		return username;
+	}
+
 	public String toString() {
 		return (
 			"businessName="+businessName
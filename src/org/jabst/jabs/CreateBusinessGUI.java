@@ -4,6 +4,7 @@ import javafx.event.ActionEvent;//type of event
 import javafx.event.EventHandler;//this activates when a button is pressed
 import javafx.geometry.Insets;//insets = padding
 import javafx.scene.control.*;//buttons, labels  etc.
+import javafx.scene.input.KeyEvent;//key listener
 import javafx.scene.layout.VBox;//layout manager
 import javafx.scene.layout.HBox;
 import javafx.scene.Scene;//area inside stage
@@ -14,6 +15,8 @@ import java.sql.SQLException;
 
 public class CreateBusinessGUI {
 
+    private static String redBorder =
+        "-fx-border-color: red ; -fx-border-width: 2px ;";
     private static DatabaseManager dbm;
 
     public static void display(SessionManager session) {
@@ -29,6 +32,21 @@ public class CreateBusinessGUI {
         VBox root = new VBox();//layout manager
             Label lUsername = new Label("Username:");
             TextField tfUName = new TextField();
+            Label lUNameTaken = new Label("Username taken");
+            lUNameTaken.setVisible(false);
+            lUNameTaken.setManaged(false);
+            tfUName.setOnKeyReleased(new EventHandler<KeyEvent>() {
+                @Override
+                public void handle(KeyEvent e) {
+                    boolean valid =
+                        session.validateUsernameInput(tfUName.getText());
+                    boolean taken =
+                        valid && session.isUsernameTaken(tfUName.getText());
+                    tfUName.setStyle(valid && !taken ? "" : redBorder);
+                    lUNameTaken.setVisible(taken);
+                    lUNameTaken.setManaged(taken);
+                }
+            });
             Label lPassword = new Label("Password:");
             PasswordField tfPassword = new PasswordField(); 
             Label lBusName = new Label("Business name:");
@@ -49,6 +67,7 @@ public class CreateBusinessGUI {
                         boolean valid = true;
                         valid &=
                         session.validateUsernameInput(tfUName.getText());
+                        valid &= !session.isUsernameTaken(tfUName.getText());
                         if (!valid) return;
                         System.out.println("Username valid");
                         valid &=
@@ -86,7 +105,7 @@ public class CreateBusinessGUI {
                 });
             hbButtons.getChildren().addAll(btCreate, btCancel);
         root.getChildren().addAll(
-                lUsername, tfUName,
+                lUsername, tfUName, lUNameTaken,
                 lPassword, tfPassword,
                 lBusName, tfBusName,
                 lOwnerName, tfOwnerName,
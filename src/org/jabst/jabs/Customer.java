@@ -22,6 +22,10 @@ public class Customer {
 	}
 	
 	// Methods
+	public String getUsername() {
+		return username;
+	}
+
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		sb.append("Customer {");
@@ -11,8 +11,12 @@ import javafx.stage.Stage;//window
 import javafx.stage.Modality;
 import javafx.stage.WindowEvent;//when window closes
 import javafx.geometry.Insets;//insets = padding
+import javafx.scene.paint.Color;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 
 import java.util.ArrayList;
+import java.util.Date;
 
 public class CustomerMenuGUI {
 
@@ -48,6 +52,10 @@ public class CustomerMenuGUI {
 		//block events to other window
 		window.initModality(Modality.APPLICATION_MODAL);
 
+		// the time held for the selected cell, so nobody else is offered it
+		// while the customer decides
+		SlotHold[] held = new SlotHold[1];
+
 		// event handlers
 		bOk.setOnAction(new EventHandler<ActionEvent>() {
 			
@@ -62,8 +70,18 @@ public class CustomerMenuGUI {
 					for(int j = 0; j < tableGUI.cells[i].length; j++) {
 						if(tableGUI.cells[i][j].selectable.isSelected()) {
 							flag = true;
-							tableAnalogue[i][j].appointmentType = 0;
-							if(!employeeManager.saveAppointment(tableAnalogue[i][j]))
+							// The cell only tells us the time; let the
+							// assignment strategy choose who takes it
+							Appointment apt = new Appointment(
+								tableAnalogue[i][j].getDate(), 0,
+								EmployeeManager.ANY_EMPLOYEE,
+								tableAnalogue[i][j].getCustomer());
+							boolean saved = held[0] != null
+								&& employeeManager.confirm(held[0]);
+							held[0] = null;
+							// the hold may have run out; book it anyway if
+							// the time is still free
+							if(!saved && !employeeManager.saveAppointment(apt))
 								System.out.println("Appointment not saved");
 						}
 					}
@@ -76,6 +94,10 @@ public class CustomerMenuGUI {
 		window.setOnCloseRequest(new EventHandler<WindowEvent>() {
 			public void handle(WindowEvent we) {
 				System.out.println("Customer Menu window Closed");
+				if(held[0] != null) {
+					employeeManager.release(held[0]);
+					held[0] = null;
+				}
 			}
 		});
 		
@@ -92,6 +114,35 @@ public class CustomerMenuGUI {
 
 		tableGUI.update();
 
+		// update() makes new cells, so this goes after it
+		for(int i = 0; i < tableGUI.cells.length; i++) {
+			for(int j = 0; j < tableGUI.cells[i].length; j++) {
+				TimetableCellGUI cell = tableGUI.cells[i][j];
+				if(tableAnalogue[i][j] == null
+					|| cell.type != TimetableCellGUI.Type.RADIOBUTTON)
+					continue;
+				Date date = tableAnalogue[i][j].getDate();
+				cell.selectable.button.selectedProperty().addListener(new ChangeListener<Boolean>() {
+					@Override
+					public void changed(ObservableValue<? extends Boolean> obs, Boolean wasSelected, Boolean isSelected) {
+						if(!isSelected)
+							return;
+						// only one cell is selected at a time
+						if(held[0] != null)
+							employeeManager.release(held[0]);
+						held[0] = employeeManager.hold(new Appointment(date, 0,
+							EmployeeManager.ANY_EMPLOYEE, customer));
+						if(held[0] == null) {
+							System.out.println("CUST MENU: "+date+" was just taken");
+							cell.selectable.setSelected(false);
+							cell.update();
+							cell.border.setFill(Color.RED);
+						}
+					}
+				});
+			}
+		}
+
 		window.setTitle("Customer GUI -placeholder-");//text at the top of the window
 		window.setScene(scene);//add scene to window
 		window.showAndWait();//put the window on the desktop
@@ -109,19 +160,19 @@ public class CustomerMenuGUI {
         // fill tables
 		for(int i = 0; i < apts.size(); i++) {
 
-			int dayIdx = DayOfWeekConversion.dat2wd(apts.get(i).getDate()).dayOfWeek.getValue();
+			int dayIdx = DayOfWeekConversion.dat2wd(apts.get(i).getDate()).getDayOfWeek().getValue();
 			dayIdx = (dayIdx == 7 ? 0 : dayIdx);
 			int hourIdx = DayOfWeekConversion.dat2wd(apts.get(i).getDate()).getStartingHour() - Employee.startingHour;//this still isnt properly defined
 			System.out.println("appointment date: "+ apts.get(i).getDate().toString());
 			System.out.println("appointment weekdate: "+ DayOfWeekConversion.dat2wd(apts.get(i).getDate()).toString());
 
-			if (hourIdx < 0 || hourIdx > table.hours) {
+			if (hourIdx < 0 || hourIdx >= table.hours) {
 				System.out.println("Skipping Appointment:\n"+apts.get(i).toString());
 				System.out.println("HourIDX ("+hourIdx+") was less than 0 or greater than "+table.hours);
 				continue;
 			}
 			tableAnalogue[dayIdx][hourIdx] = apts.get(i);
-			table.table.get(dayIdx).set(hourIdx, Timetable.CellStatus.FREE);
+			table.set(dayIdx, hourIdx, Timetable.CellStatus.FREE);
 			c++;
 		}
 		System.out.println("CREATETABLEFROMAPPOINTMENTS: number of available cells: "+c);
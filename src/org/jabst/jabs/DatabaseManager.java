@@ -7,6 +7,8 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.PreparedStatement;
 import java.sql.Timestamp;
+import java.sql.BatchUpdateException;
+import java.sql.Savepoint;
 
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
@@ -25,23 +27,42 @@ import java.util.logging.Level;
 import java.util.logging.ConsoleHandler;
 
 // For SHA-256 hashing
-import org.jabst.jabs.util.Digest;
 
 import org.jabst.jabs.util.DayOfWeekConversion;
+import org.jabst.jabs.util.LruCache;
+import org.jabst.jabs.util.PasswordHash;
+import org.jabst.jabs.util.WeekDateSet;
 
 // For returning result sets as native objects
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 // Time imports
 import java.util.Calendar;
 import java.util.Calendar.Builder;
 import java.util.TimeZone;
 import java.time.DateTimeException;
+import java.time.Duration;
 import java.time.DayOfWeek;
 
 public class DatabaseManager {
     /** The string that all database file connections start with */
     private static final String dbfilePrefix = "jdbc:hsqldb:file:";
+    /** The string that in-memory database connections start with */
+    private static final String dbMemoryPrefix = "jdbc:hsqldb:mem:";
     /** The SQL tables and data that are in the general database by default.
       * Used for testing without manual insertion.
       */
@@ -123,18 +144,136 @@ public class DatabaseManager {
         "INSERT INTO APPOINTMENT VALUES (DEFAULT, %s+INTERVAL '10' HOUR, 0, 0, 'default_customer')"
     };
 
+    /** Whether appointment A has the same employee and time as one booked
+      * before it, i.e. A is the later of two clashing bookings */
+    private static final String EARLIER_BOOKING_OF_SAME_TIME_EXISTS =
+        "EXISTS (SELECT 1 FROM APPOINTMENT B "
+       +"WHERE B.EMPLOYEE = A.EMPLOYEE AND B.DATE_AND_TIME = A.DATE_AND_TIME "
+       +"AND B.APT_ID < A.APT_ID)";
+
+    /** Changes to the general database made after SQL_TABLES_GENERAL.
+      * See SQL_MIGRATIONS_BUSINESS.
+      */
+    private static final String[][] SQL_MIGRATIONS_GENERAL = {
+        // 1: Room for salted, versioned password hashes. See PasswordHash.
+        {
+            "ALTER TABLE CREDENTIALS ALTER COLUMN PASSWORD "
+           +"SET DATA TYPE VARBINARY("+PasswordHash.MAX_LENGTH+")"
+        }
+    };
+    /** Changes to business databases made after SQL_TABLES_BUSINESS.
+      * Step i takes a database from schema version i to version i+1, and
+      * the version reached is recorded in the database's SCHEMA_VERSION
+      * table. Every database is brought up to date when it is opened.
+      * Only ever add steps to the end: databases out there already have the
+      * earlier ones applied.
+      */
+    private static final String[][] SQL_MIGRATIONS_BUSINESS = {
+        // 1: An employee can only have one appointment at a time.
+        // Its index also serves lookups of an employee's appointments.
+        // Earlier versions let the same time be booked twice. All but the
+        // first booking of each time are moved to APPOINTMENT_CLASH for the
+        // business to sort out, so the constraint can be added.
+        {
+            "CREATE TABLE APPOINTMENT_CLASH "
+           +"AS (SELECT * FROM APPOINTMENT) WITH NO DATA",
+            "INSERT INTO APPOINTMENT_CLASH "
+           +"SELECT * FROM APPOINTMENT A "
+           +"WHERE "+EARLIER_BOOKING_OF_SAME_TIME_EXISTS,
+            "DELETE FROM APPOINTMENT A "
+           +"WHERE "+EARLIER_BOOKING_OF_SAME_TIME_EXISTS,
+            "ALTER TABLE APPOINTMENT ADD CONSTRAINT APPOINTMENT_SLOT_UNIQUE "
+           +"UNIQUE (EMPLOYEE, DATE_AND_TIME)"
+        },
+        // 2: Date range queries over all employees, e.g. the week view
+        {
+            "CREATE INDEX APPOINTMENT_DATE_IDX ON APPOINTMENT (DATE_AND_TIME)"
+        },
+        // 3: Availability of all employees, ordered by day and time
+        {
+            "CREATE INDEX AVAILABILITY_DAY_TIME_IDX "
+           +"ON AVAILABILITY (AVAILABLE_DAY, AVAILABLE_TIME)"
+        },
+        // 4: How long each type of appointment goes for. Existing types
+        // keep the hour every appointment used to take.
+        {
+            "ALTER TABLE APPOINTMENTTYPE "
+           +"ADD COLUMN DURATION_MINUTES INTEGER DEFAULT 60 NOT NULL"
+        }
+    };
+    /** HSQLDB error code for CREATE/ADD of a name that is already used */
+    private static final int HSQL_OBJECT_EXISTS = -5504;
+
     /** The name of the general database */
     public static final String dbDefaultFileName = "db/credentials_db";
     /** The name of the default business' database file */
     public static final String defaultBusinessName = "default_business";
+    /** How many customers are kept in memory after being looked up */
+    public static final int CUSTOMER_CACHE_SIZE = 1024;
+    /** Passed to getAppointments as the employee filter to read every
+      * employee's appointments */
+    public static final long ALL_EMPLOYEES = -1;
+    /** How many appointment rows are fetched from the database, and have
+      * their customers looked up, at a time */
+    public static final int APPOINTMENT_FETCH_SIZE = 256;
+    /** How many users' types are remembered after logging in */
+    public static final int USER_TYPE_CACHE_SIZE = 256;
+    /** How many usernames are read from the database at a time when
+      * building the username index */
+    public static final int USERNAME_FETCH_SIZE = 1024;
+    /** How long hashing a password should take. The hash's cost is
+      * calibrated to this when the DatabaseManager is created. */
+    public static final long PASSWORD_HASH_MILLIS = 100;
+    /** How many passwords are checked at once by authenticateAsync. Each
+      * login thread has its own connection to the general database. */
+    public static final int LOGIN_THREADS =
+        Math.min(4, Runtime.getRuntime().availableProcessors());
+    /** How many logins can wait for a login thread before more are refused */
+    public static final int LOGIN_QUEUE_SIZE = 64;
+    /** How long close waits for logins in progress to finish */
+    private static final long LOGIN_SHUTDOWN_SECONDS = 5;
+    /** How long a remembered user type is used before it is read again */
+    private static final long USER_TYPE_CACHE_NANOS =
+        TimeUnit.MINUTES.toNanos(1);
     /** Logger. All output should go through logger instead of System.out */
     private Logger logger;
     /** Sends the logs to stderr */
     private ConsoleHandler ch;
     /** The JDBC connection to the general (user info) database */
     private Connection generalConnection;
+    /** Prepared statements on the general database */
+    private StatementCache generalStatements;
+    /** Goes before a database's name to make its JDBC URL: dbfilePrefix,
+      * or dbMemoryPrefix for a manager made by inMemory */
+    private final String dbPrefix;
+    /** The name of the general database file, for the login threads'
+      * connections */
+    private final String generalDbFile;
+    /** Customers recently read from the general database, by username */
+    private LruCache<String, Customer> customerCache =
+        new LruCache<String, Customer>(CUSTOMER_CACHE_SIZE);
+    /** Types of users who recently logged in, by username. The login
+      * threads fill it too, so it is only used under its own lock; they
+      * share nothing else with the rest of the DatabaseManager. */
+    private final LruCache<String, CachedUserType> userTypeCache =
+        new LruCache<String, CachedUserType>(USER_TYPE_CACHE_SIZE);
+    /** Every username, for checking new ones without the database */
+    private final UsernameIndex usernames;
+    /** Runs authenticateAsync, off the caller's thread */
+    private final ThreadPoolExecutor loginPool;
+    /** Each login thread's statements, on its own connection to the general
+      * database, made the first time the thread is used */
+    private final ThreadLocal<StatementCache> loginStatements =
+        new ThreadLocal<StatementCache>();
+    /** Every login thread's statements, for closing them */
+    private final ConcurrentLinkedQueue<StatementCache> allLoginStatements =
+        new ConcurrentLinkedQueue<StatementCache>();
     /** The JDBC connection to the business-specific database*/
     private Connection businessConnection;
+    /** The business we are connected to, which owns businessConnection */
+    private TenantConnection tenant;
+    /** Keeps recently used business databases open between sessions */
+    private TenantConnectionPool tenantPool;
 
     /** Creates a new DatabaseManager
      * Always open the DatabaseManager at program start (call the constructor),
@@ -143,6 +282,39 @@ public class DatabaseManager {
      * @throws HsqlException, SQLException
      */
     public DatabaseManager(String dbfile) throws HsqlException, SQLException {
+        this(dbfile, TenantConnectionPool.DEFAULT_CAPACITY);
+    }
+
+    /** Creates a new DatabaseManager which keeps up to tenantPoolCapacity
+     * business databases open at once.
+     * @param The name of the file to open
+     * @param tenantPoolCapacity The most business databases to keep open.
+     * Must be at least 1.
+     * @throws HsqlException, SQLException
+     */
+    public DatabaseManager(String dbfile, int tenantPoolCapacity)
+        throws HsqlException, SQLException
+    {
+        this(dbfilePrefix, dbfile, tenantPoolCapacity);
+    }
+
+    /** Creates a DatabaseManager whose general and business databases are
+      * kept in memory rather than in files. A database gets the default
+      * tables and data the first time its name is used in the JVM, and lasts
+      * until the JVM exits. The checks in org.jabst.jabs.test use it so they
+      * leave db/ alone.
+      * @param dbfile The name of the general database
+      * @throws SQLException If the databases could not be made
+      */
+    public static DatabaseManager inMemory(String dbfile) throws SQLException {
+        return new DatabaseManager(
+            dbMemoryPrefix, dbfile, TenantConnectionPool.DEFAULT_CAPACITY);
+    }
+
+    private DatabaseManager(String dbPrefix, String dbfile,
+        int tenantPoolCapacity) throws SQLException
+    {
+        this.dbPrefix = dbPrefix;
         this.logger = Logger.getLogger("org.jabst.jabs.DatabaseManager");
         logger.setLevel(Level.FINEST);
         this.ch = new ConsoleHandler();
@@ -153,6 +325,36 @@ public class DatabaseManager {
             throw new SQLException();
         }
         generalConnection.setAutoCommit(false);
+        migrate(generalConnection, SQL_MIGRATIONS_GENERAL, dbfile);
+        this.generalStatements = new StatementCache(generalConnection);
+        this.generalDbFile = dbfile;
+        this.usernames = loadUsernames();
+        logger.info("Password hash iterations: "
+            + PasswordHash.calibrate(PASSWORD_HASH_MILLIS));
+        this.loginPool = new ThreadPoolExecutor(
+            LOGIN_THREADS, LOGIN_THREADS, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(LOGIN_QUEUE_SIZE),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "login");
+                    t.setDaemon(true);
+                    return t;
+                }
+            }
+        );
+        this.tenantPool = new TenantConnectionPool(
+            tenantPoolCapacity,
+            new TenantConnectionPool.Opener() {
+                @Override
+                public TenantConnection open(String busUsername)
+                    throws SQLException
+                {
+                    return openBusiness(busUsername);
+                }
+            },
+            logger
+        );
     }
 
     /** Creates the database tables in case the database is being
@@ -230,19 +432,59 @@ public class DatabaseManager {
       * You MUST do this, or data will not be saved on program exit
       */
     public void close() {
+        loginPool.shutdown();
+        try {
+            loginPool.awaitTermination(LOGIN_SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (StatementCache statements : allLoginStatements) {
+            statements.close();
+            try {
+                statements.getConnection().close();
+            } catch (SQLException e) {
+                logger.warning("Error closing a login connection. Continuing.");
+            }
+        }
+        allLoginStatements.clear();
+        generalStatements.close();
         try {
             generalConnection.commit();
             generalConnection.close();
-            if (businessConnection != null && !businessConnection.isClosed()) {
-                businessConnection.commit();
-                businessConnection.close();
-            }
         } catch (SQLException e) {
             // Nah don't bother handling it
             logger.warning(
                 "DatabaseManager: Error closing database properly. Continuing."
             );
         }
+        // Commits and closes every business we have open, including this one
+        tenantPool.closeAll();
+        tenant = null;
+        businessConnection = null;
+    }
+
+    /** Changes how many business databases are kept open at once. The least
+      * recently used ones are closed if there are more open than this.
+      * @param capacity The most business databases to keep open, at least 1
+      */
+    public void setTenantPoolCapacity(int capacity) {
+        tenantPool.setCapacity(capacity);
+    }
+
+    /** Closes the given business' database if it is kept open.
+      * The next connectToBusiness for it will reopen the file.
+      */
+    public void evictBusiness(String busUsername) {
+        if (tenant != null && tenant.busUsername.equals(busUsername)) {
+            tenant = null;
+            businessConnection = null;
+        }
+        tenantPool.evict(busUsername);
+    }
+
+    /** @return The username of the business we are connected to, or null */
+    public String getBusinessUsername() {
+        return (tenant == null ? null : tenant.busUsername);
     }
 
     /** Tries to connect to the given database, and create it if it doesn't exist already
@@ -254,14 +496,14 @@ public class DatabaseManager {
     private Connection openCreateDatabase(String dbFileName, String[] tables) {
         Connection c = null;
          try {
-             c = DriverManager.getConnection(dbfilePrefix+dbFileName+";ifexists=true", "sa", "");
+             c = DriverManager.getConnection(dbPrefix+dbFileName+";ifexists=true", "sa", "");
          } catch (HsqlException hse) {
              logger.severe("HqlException conecting to database'"+dbFileName+"': Doesn't exist");
          }
 
          catch (SQLException se) {
             try {
-                c = DriverManager.getConnection(dbfilePrefix+dbFileName, "sa", "");
+                c = DriverManager.getConnection(dbPrefix+dbFileName, "sa", "");
             } catch (SQLException sqle) {
                 logger.severe(
                     "DriverManager: Error: Cannot connect to general database"
@@ -278,6 +520,97 @@ public class DatabaseManager {
         return c;
     }
 
+    /** Brings the database's schema up to date by applying each migration
+      * step it hasn't had yet, in order. The version reached is recorded after
+      * each step, so if a step fails the earlier ones are kept and the
+      * failed one is tried again next time the database is opened.
+      * @param connection The connection to migrate
+      * @param migrations The steps for this kind of database, see
+      * SQL_MIGRATIONS_BUSINESS
+      * @param dbFileName The name of the database, for logging
+      * @return The schema version the database is now at
+      */
+    private int migrate(Connection connection, String[][] migrations,
+        String dbFileName)
+    {
+        int version;
+        try {
+            version = getSchemaVersion(connection);
+        } catch (SQLException sqle) {
+            logger.severe("Cannot read schema version of '"+dbFileName+"'");
+            sqle.printStackTrace();
+            return -1;
+        }
+
+        for (; version < migrations.length; ++version) {
+            try {
+                Statement stmt = connection.createStatement();
+                for (String sql : migrations[version]) {
+                    try {
+                        stmt.execute(sql);
+                        // Data a step had to fix, e.g. clashing bookings
+                        int changed = stmt.getUpdateCount();
+                        if (changed > 0) {
+                            logger.warning("Migration: "+changed
+                                +" rows changed by: "+sql);
+                        }
+                    } catch (SQLException sqle) {
+                        // Made by hand or by an older version of JABS;
+                        // either way it is already there
+                        if (sqle.getErrorCode() != HSQL_OBJECT_EXISTS) {
+                            throw sqle;
+                        }
+                        logger.info("Migration: already applied: "+sql);
+                    }
+                }
+                stmt.executeUpdate(
+                    "UPDATE SCHEMA_VERSION SET VERSION = "+(version + 1)
+                );
+                stmt.close();
+                connection.commit();
+                logger.info("Migrated '"+dbFileName+"' to schema version "
+                    +(version + 1));
+            } catch (SQLException sqle) {
+                logger.severe("Migrating '"+dbFileName+"' to schema version "
+                    +(version + 1)+" failed. Staying at version "+version);
+                sqle.printStackTrace();
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackFailed) {
+                    // Nothing more we can do
+                }
+                break;
+            }
+        }
+        return version;
+    }
+
+    /** Gets the schema version recorded in the database, creating the
+      * SCHEMA_VERSION table at version 0 if there isn't one.
+      * @param connection The database to ask
+      * @return The number of migration steps the database has had
+      * @throws SQLException If a database error occurs
+      */
+    private int getSchemaVersion(Connection connection) throws SQLException {
+        Statement stmt = connection.createStatement();
+        ResultSet rs = stmt.executeQuery(
+            "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES "
+           +"WHERE TABLE_NAME = 'SCHEMA_VERSION'"
+        );
+        rs.next();
+        if (rs.getInt(1) == 0) {
+            stmt.execute("CREATE TABLE SCHEMA_VERSION (VERSION INTEGER NOT NULL)");
+            stmt.execute("INSERT INTO SCHEMA_VERSION VALUES (0)");
+            connection.commit();
+        }
+
+        rs = stmt.executeQuery("SELECT VERSION FROM SCHEMA_VERSION");
+        rs.next();
+        int version = rs.getInt(1);
+        stmt.close();
+        return version;
+    }
+
     /** Opens the default business database */
     public boolean connectToBusiness() throws SQLException {
         return connectToBusiness(defaultBusinessName);
@@ -285,25 +618,41 @@ public class DatabaseManager {
 
     /** Opens a connection to the business specified with the username
       * The database file is located in db/$username
+      * If the business' database is still open from an earlier session it is
+      * reused rather than reopened.
       * @param String busUsername : The username of the business
       * @return Whether a connection was sucessfully made
       */
     public boolean connectToBusiness(String busUsername) throws SQLException {
-        // Close any existing connection
-        if (businessConnection != null && !businessConnection.isClosed()) {
-            businessConnection.close();
+        TenantConnection pooled = tenantPool.acquire(busUsername);
+        if (pooled == null) {
+            return false;
         }
+        this.tenant = pooled;
+        this.businessConnection = pooled.connection;
+        return true;
+    }
 
+    /** Opens the database of the given business for the tenant pool.
+      * @param busUsername The username of the business
+      * @return A connection to the business' database, or null if there is no
+      * such business or its database could not be opened
+      * @throws SQLException If a database error occurs, or the database could
+      * not be migrated to the current schema version
+      */
+    private TenantConnection openBusiness(String busUsername)
+        throws SQLException
+    {
         // Look up the business name in the table of businesses
-        Statement stmt = generalConnection.createStatement();
-
-        ResultSet rs = stmt.executeQuery(
-            "SELECT COUNT(USERNAME) FROM BUSINESS WHERE USERNAME='"+busUsername+"'"
-            );
+        PreparedStatement pstmt = generalStatements.prepare(
+            "SELECT COUNT(USERNAME) FROM BUSINESS WHERE USERNAME=?"
+        );
+        pstmt.setString(1, busUsername);
+        ResultSet rs = pstmt.executeQuery();
         rs.next();
         switch(rs.getInt(1)) {
             case 0:
-                return false;
+                return null;
             case 1:
                 break;
             default:
@@ -313,12 +662,55 @@ public class DatabaseManager {
 
         // We now know it exists for certain, but not whether it has a database
         // Open or create the business' database
-        this.businessConnection = openCreateDatabase("db/"+busUsername, SQL_TABLES_BUSINESS);
-        if (this.businessConnection == null) {
-            return false;
+        Connection connection =
+            openCreateDatabase("db/"+busUsername, SQL_TABLES_BUSINESS);
+        if (connection == null) {
+            return null;
         }
-        this.businessConnection.setAutoCommit(false);
-        return true;
+        TenantConnection opened = null;
+        try {
+            connection.setAutoCommit(false);
+            int version = migrate(
+                connection, SQL_MIGRATIONS_BUSINESS, "db/"+busUsername);
+            // Every query assumes the current schema, e.g. the appointment
+            // type durations, so a database left behind cannot be used
+            if (version < SQL_MIGRATIONS_BUSINESS.length) {
+                throw new SQLException("Database of business '"+busUsername
+                    +"' is at schema version "+version+" of "
+                    +SQL_MIGRATIONS_BUSINESS.length);
+            }
+            opened = new TenantConnection(busUsername, connection);
+            loadAppointmentTypes(opened);
+            return opened;
+        } catch (SQLException sqle) {
+            // Not pooled yet, so nothing else will close it
+            if (opened != null) {
+                opened.statements.close();
+            }
+            connection.close();
+            throw sqle;
+        }
+    }
+
+    /** Reads all of the business' appointment types into its registry */
+    private void loadAppointmentTypes(TenantConnection tenant)
+        throws SQLException
+    {
+        ArrayList<AppointmentType> types = new ArrayList<AppointmentType>();
+        ResultSet rs = tenant.statements.prepare(
+            "SELECT TYPE_ID, NAME, COST_CENTS, DURATION_MINUTES "
+            +"FROM APPOINTMENTTYPE"
+        ).executeQuery();
+        while (rs.next()) {
+            types.add(new AppointmentType(
+                rs.getInt(1),
+                Duration.ofMinutes(rs.getInt(4)),
+                rs.getString(2),
+                rs.getInt(3)
+            ));
+        }
+        rs.close();
+        tenant.appointmentTypes.replaceAll(types);
     }
 
     /** Gets the business associated with the username
@@ -328,14 +720,16 @@ public class DatabaseManager {
       */
     public Business getBusiness(String businessUsername) {
         try {
-            Statement stmt = generalConnection.createStatement();
-            ResultSet rs = stmt.executeQuery(
-                "SELECT * FROM BUSINESS "
-            +"WHERE USERNAME='"+businessUsername+"'"
+            PreparedStatement pstmt = generalStatements.prepare(
+                "SELECT BUSINESS_NAME, OWNER_NAME, ADDRESS, PHONE FROM BUSINESS "
+               +"WHERE USERNAME=?"
             );
+            pstmt.setString(1, businessUsername);
+            ResultSet rs = pstmt.executeQuery();
 
             rs.next();
             return new Business (
+                businessUsername,
                 rs.getString("BUSINESS_NAME"),
                 rs.getString("OWNER_NAME"),
                 rs.getString("ADDRESS"),
@@ -346,15 +740,23 @@ public class DatabaseManager {
             return null;
         }
     }
-    
+
+    /** Gets every business in the database. For long lists, use
+      * getBusinessesPage instead.
+      * @return The businesses, or null if a database error occurs
+      */
     public ArrayList<Business> getAllBusinesses() {
         ArrayList<Business> businesses = new ArrayList<Business>();
         try {
-            Statement stmt = generalConnection.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM BUSINESS ");
+            PreparedStatement pstmt = generalStatements.prepare(
+                "SELECT USERNAME, BUSINESS_NAME, OWNER_NAME, ADDRESS, PHONE "
+               +"FROM BUSINESS"
+            );
+            ResultSet rs = pstmt.executeQuery();
 
             while(rs.next()) {
                 businesses.add(new Business (
+                    rs.getString("USERNAME"),
                     rs.getString("BUSINESS_NAME"),
                     rs.getString("OWNER_NAME"),
                     rs.getString("ADDRESS"),
@@ -368,30 +770,69 @@ public class DatabaseManager {
         return businesses;
     }
     
+    /** Gets one page of businesses, in order of username. To get the next
+      * page, pass the username of the last business on this one.
+      * Only the rows on the page are read, however many businesses there are.
+      * @param afterUsername Only businesses with usernames after this are
+      * returned. Null for the first page.
+      * @param namePrefix Only businesses whose name starts with this are
+      * returned. Null or empty for all businesses.
+      * @param pageSize The most businesses to return
+      * @return The page of businesses. Shorter than pageSize on the last page.
+      * @throws SQLException If a database error occurs
+      */
+    public ArrayList<Business> getBusinessesPage(
+        String afterUsername, String namePrefix, int pageSize)
+        throws SQLException
+    {
+        PreparedStatement pstmt = generalStatements.prepare(
+            "SELECT USERNAME, BUSINESS_NAME, OWNER_NAME, ADDRESS, PHONE "
+           +"FROM BUSINESS "
+           +"WHERE USERNAME > ? AND BUSINESS_NAME LIKE ? ESCAPE '\\' "
+           +"ORDER BY USERNAME "
+           +"LIMIT ?"
+        );
+        pstmt.setString(1, afterUsername == null ? "" : afterUsername);
+        pstmt.setString(2, likePrefix(namePrefix));
+        pstmt.setInt(3, pageSize);
+
+        ArrayList<Business> businesses = new ArrayList<Business>(pageSize);
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            businesses.add(new Business (
+                rs.getString(1),
+                rs.getString(2),
+                rs.getString(3),
+                rs.getString(4),
+                rs.getString(5)
+            ));
+        }
+        rs.close();
+        return businesses;
+    }
+
     /** Deletes the business from given object representation.
       * @return true if the business existed and was deleted; false if it did not
       * @param bus The business to delete
       * @throws SQLException If a database error occurred, which does not
       * include when the business does not exist */
     public boolean deleteBusiness(Business bus) throws SQLException {
-        Statement stmt = generalConnection.createStatement();
-        stmt.execute(
-            String.format(
-                "DELETE FROM BUSINESS "
-                    +"WHERE business_name='%s'"
-                    +"AND   owner_name='%s'"
-                    +"AND   address='%s'"
-                    +"AND   phone='%s'",
-                    bus.businessName,
-                    bus.businessOwner,
-                    bus.address,
-                    bus.phone
-            )
+        PreparedStatement pstmt = generalStatements.prepare(
+            "DELETE FROM BUSINESS "
+                +"WHERE business_name=? "
+                +"AND   owner_name=? "
+                +"AND   address=? "
+                +"AND   phone=?"
         );
-        if (stmt.getUpdateCount() == 0) {
+        pstmt.setString(1, bus.businessName);
+        pstmt.setString(2, bus.businessOwner);
+        pstmt.setString(3, bus.address);
+        pstmt.setString(4, bus.phone);
+        if (pstmt.executeUpdate() == 0) {
             return false;
         }
         else {
+            invalidateUserTypes();
             return true;
         }
     }
@@ -405,44 +846,173 @@ public class DatabaseManager {
       */
     public boolean checkUser (String username, String password)
         throws SQLException {
-        // Take the hash 
-        byte[] password_hash = Digest.sha256(password);
-        boolean success = false;
+        return authenticate(username, password) != UserType.NON_EXISTANT;
+    }
+
+    /** Checks the username and password and finds what type of user they
+      * belong to, in one query. The type is remembered for a short time, so
+      * that getUserType for the same user straight after logging in does not
+      * go back to the database. If the password is right but its stored hash
+      * is an old version or cheaper than new hashes, it is hashed again.
+      * @param username The username of the user
+      * @param password The password of the user
+      * @return The UserType of the user, or NON_EXISTANT if there is no such
+      * user or the password does not match
+      * @throws SQLException If there was a database error
+      */
+    public UserType authenticate(String username, String password)
+        throws SQLException
+    {
+        return authenticate(username, password, generalStatements);
+    }
 
-        PreparedStatement statement = generalConnection.prepareStatement(
-            "SELECT * from CREDENTIALS WHERE USERNAME='"+username+"'"
+    /** authenticate, using the given statements on the general database */
+    private UserType authenticate(String username, String password,
+        StatementCache statements)
+        throws SQLException
+    {
+        PreparedStatement statement = statements.prepare(
+            "SELECT C.PASSWORD, B.USERNAME, S.USERNAME FROM CREDENTIALS C "
+            +"LEFT JOIN BUSINESS B ON B.USERNAME = C.USERNAME "
+            +"LEFT JOIN SUPERUSER S ON S.USERNAME = C.USERNAME "
+            +"WHERE C.USERNAME=?"
         );
+        statement.setString(1, username);
 
-        ResultSet rs = statement.executeQuery(); 
-        while (rs.next()) {
-            String result_username = rs.getString("username");
-            byte[] result_password = rs.getBytes("password");
-            logger.info("Input: username,password = "+username+","
-                + Digest.digestToHexString(password_hash)+"\n"
-            );
-            logger.info("Result:username,password = "+result_username+","
-                + Digest.digestToHexString(result_password)+"\n"
-            );
+        byte[] stored;
+        UserType type;
+        ResultSet rs = statement.executeQuery();
+        try {
+            if (!rs.next()) {
+                return UserType.NON_EXISTANT;
+            }
+            stored = rs.getBytes(1);
+            type = userTypeOf(rs.getString(2), rs.getString(3));
+        } finally {
+            rs.close();
+        }
 
-            for (int i = 0; i < result_password.length; ++i) {
-                if (result_password[i] != password_hash[i]) {
-                    success = false;
-                    break;
+        if (!PasswordHash.verify(password, stored)) {
+            logger.info("Wrong password for user "+username);
+            return UserType.NON_EXISTANT;
+        }
+        // Only once the password is right, so guessing does not fill it
+        cacheUserType(username, type);
+        if (PasswordHash.needsUpgrade(stored)) {
+            setPassword(username, password, statements);
+            logger.info("Upgraded password hash of user "+username);
+        }
+        return type;
+    }
+
+    /** Runs authenticate on a bounded pool of login threads, so a slow
+      * password hash does not hold up the caller's thread. Each login thread
+      * reads and upgrades hashes through its own connection, so any number
+      * of logins can be checked at once while the caller carries on using
+      * this DatabaseManager.
+      * @return The result of authenticate. Completes exceptionally with the
+      * SQLException if there was a database error, or with a
+      * RejectedExecutionException if too many logins are already waiting.
+      */
+    public CompletableFuture<UserType> authenticateAsync(
+        final String username, final String password)
+    {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return authenticate(username, password,
+                        loginStatements());
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
                 }
-                success = true;
-            }
+            }, loginPool);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<UserType> refused = new CompletableFuture<>();
+            refused.completeExceptionally(e);
+            return refused;
+        }
+    }
+
+    /** @return The calling login thread's statements, opening its
+      * connection to the general database the first time */
+    private StatementCache loginStatements() throws SQLException {
+        StatementCache statements = loginStatements.get();
+        if (statements == null) {
+            Connection connection = DriverManager.getConnection(
+                dbPrefix+generalDbFile+";ifexists=true", "sa", "");
+            connection.setAutoCommit(false);
+            statements = new StatementCache(connection);
+            loginStatements.set(statements);
+            allLoginStatements.add(statements);
         }
+        return statements;
+    }
+
+    /** Replaces the stored hash of the user's password with a new one, and
+      * commits the connection the statements are on */
+    private void setPassword(String username, String password,
+        StatementCache statements)
+        throws SQLException
+    {
+        PreparedStatement pstmt = statements.prepare(
+            "UPDATE CREDENTIALS SET PASSWORD=? WHERE USERNAME=?"
+        );
+        pstmt.setBytes(1, PasswordHash.hash(password));
+        pstmt.setString(2, username);
+        pstmt.executeUpdate();
+        statements.getConnection().commit();
+    }
 
+    /** Checks whether a username is already in use, for as the user types
+      * it in. Most free usernames are answered from memory; the database is
+      * only asked when the username might be taken.
+      * @param username The username to check
+      * @return Whether there is a user with the username
+      * @throws SQLException If there was a database error
+      */
+    public boolean isUsernameTaken(String username) throws SQLException {
+        if (usernames.isCertainlyTaken(username)) {
+            return true;
+        }
+        if (!usernames.mightBeTaken(username)) {
+            return false;
+        }
+        PreparedStatement pstmt = generalStatements.prepare(
+            "SELECT 1 FROM CREDENTIALS WHERE USERNAME=?"
+        );
+        pstmt.setString(1, username);
+        ResultSet rs = pstmt.executeQuery();
+        boolean taken = rs.next();
         rs.close();
-        statement.close();
+        return taken;
+    }
 
-        return success;
+    /** Reads every username into a new UsernameIndex */
+    private UsernameIndex loadUsernames() throws SQLException {
+        Statement statement = generalConnection.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery(
+                "SELECT COUNT(*) FROM CREDENTIALS");
+            rs.next();
+            UsernameIndex index = new UsernameIndex(rs.getInt(1));
+            rs.close();
+
+            statement.setFetchSize(USERNAME_FETCH_SIZE);
+            rs = statement.executeQuery("SELECT USERNAME FROM CREDENTIALS");
+            while (rs.next()) {
+                index.add(rs.getString(1));
+            }
+            rs.close();
+            return index;
+        } finally {
+            statement.close();
+        }
     }
 
     /** Adds a user with the username and password to the database
      *  @param username The username of the user
-     *  @param password The password of the user, to be hashed with sha256
-     *  before being stored
+     *  @param password The password of the user, to be hashed with
+     *  PasswordHash before being stored
      *  @throws SQLException If a general database error occurs
      *  @throws SQLIntegrityConstraintViolationException If this exception is
      *  thrown, the caller should give a message about the username/password
@@ -451,10 +1021,8 @@ public class DatabaseManager {
     private void addUser(String username, String password)
         throws SQLException {
 
-        byte[] password_hash = Digest.sha256(password);
-        PreparedStatement statement = null;
-
-        statement = generalConnection.prepareStatement(
+        byte[] password_hash = PasswordHash.hash(password);
+        PreparedStatement statement = generalStatements.prepare(
             "INSERT INTO CREDENTIALS VALUES (?, ?)"
         );
 
@@ -463,10 +1031,11 @@ public class DatabaseManager {
 
         logger.info("About to execute adding user...");
         statement.execute();
+        invalidateUserTypes();
 
-        statement.close();
         // After adding a user, they need to be able to log in again
         generalConnection.commit();
+        usernames.register(username);
     }
 
     /** Adds a user with the given arguments
@@ -484,7 +1053,7 @@ public class DatabaseManager {
         addUser(username, password);
 
         // Now add to customers table
-        PreparedStatement statement = generalConnection.prepareStatement(
+        PreparedStatement statement = generalStatements.prepare(
             // USERNAME, NAME, ADDRESS, PHONE
             "INSERT INTO CUSTOMERS VALUES (?, ?, ?, ?)"
         );
@@ -494,7 +1063,6 @@ public class DatabaseManager {
         statement.setString(4, phone);
 
         statement.execute();
-        statement.close();
         generalConnection.commit();
     }
 
@@ -509,15 +1077,18 @@ public class DatabaseManager {
     ) throws SQLException
     {
         addUser(username, password);
-        Statement stmt = generalConnection.createStatement();
-        stmt.execute(String.format(
-            "INSERT INTO BUSINESS VALUES ('%s', '%s', '%s', '%s', '%s')",
-            username,
-            busname, ownername,
-            address, phone
-        ));
-        stmt.close();
+        PreparedStatement pstmt = generalStatements.prepare(
+            // USERNAME, BUSINESS_NAME, OWNER_NAME, ADDRESS, PHONE
+            "INSERT INTO BUSINESS VALUES (?, ?, ?, ?, ?)"
+        );
+        pstmt.setString(1, username);
+        pstmt.setString(2, busname);
+        pstmt.setString(3, ownername);
+        pstmt.setString(4, address);
+        pstmt.setString(5, phone);
+        pstmt.execute();
         generalConnection.commit();
+        invalidateUserTypes();
     }
 
     /** Gets the customer with the given username. Customers are uniquely
@@ -528,30 +1099,86 @@ public class DatabaseManager {
       * @throws SQLException If a database error occurs
       */
     public Customer getCustomer(String username) throws SQLException {
+        Customer cached = customerCache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+
         // Get the customer by username
-        Statement stmt = generalConnection.createStatement();
-        ResultSet rs = stmt.executeQuery(
+        PreparedStatement pstmt = generalStatements.prepare(
             "SELECT USERNAME, NAME, ADDRESS, PHONE FROM CUSTOMERS "
-           +"WHERE USERNAME='"+username+"'"
+           +"WHERE USERNAME=?"
         );
+        pstmt.setString(1, username);
+        ResultSet rs = pstmt.executeQuery();
         // Construct the customer as object and return
         rs.next();
-        return new Customer (
+        Customer customer = new Customer (
             rs.getString(1),
             rs.getString(2),
             rs.getString(3),
             rs.getString(4)
         );
+        customerCache.put(username, customer);
+        return customer;
+    }
+
+    /** Gets all the customers with the given usernames in one query.
+      * Customers already in memory are not asked for again.
+      * @param usernames The usernames to look up. Duplicates are fine.
+      * @return The customers found, by username. Usernames with no customer
+      * are left out.
+      * @throws SQLException If a database error occurs
+      */
+    public HashMap<String, Customer> getCustomers(Collection<String> usernames)
+        throws SQLException
+    {
+        HashMap<String, Customer> found = new HashMap<String, Customer>();
+        HashSet<String> missing = new HashSet<String>();
+        for (String username : usernames) {
+            Customer cached = customerCache.get(username);
+            if (cached != null) {
+                found.put(username, cached);
+            }
+            else {
+                missing.add(username);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        PreparedStatement pstmt = generalStatements.prepare(
+            "SELECT USERNAME, NAME, ADDRESS, PHONE FROM CUSTOMERS "
+           +"WHERE USERNAME IN (UNNEST(?))"
+        );
+        pstmt.setArray(1,
+            generalConnection.createArrayOf("VARCHAR", missing.toArray())
+        );
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            Customer customer = new Customer (
+                rs.getString(1),
+                rs.getString(2),
+                rs.getString(3),
+                rs.getString(4)
+            );
+            customerCache.put(customer.username, customer);
+            found.put(customer.username, customer);
+        }
+        rs.close();
+        return found;
     }
 
-    /** Returns all the customers in the database as ArrayList<Customer>
+    /** Returns all the customers in the database as ArrayList<Customer>.
+      * For long lists, use getCustomersPage instead.
       * @throws SQLException If a database error occurs
       */
     public ArrayList<Customer> getAllCustomers() throws SQLException {
         ArrayList<Customer> customers = new ArrayList<Customer>();
         // Ask database for all customers
-        PreparedStatement pstmt = generalConnection.prepareStatement(
-            "SELECT USERNAME, NAME, ADDRESS, PHONE FROM CUSTOMERS "
+        PreparedStatement pstmt = generalStatements.prepare(
+            "SELECT USERNAME, NAME, ADDRESS, PHONE FROM CUSTOMERS"
         );
         ResultSet rs = pstmt.executeQuery();
         // Construct the customer as object and return
@@ -568,6 +1195,61 @@ public class DatabaseManager {
         return customers;
     }
 
+    /** Gets one page of customers, in order of username. To get the next
+      * page, pass the username of the last customer on this one.
+      * Only the rows on the page are read, however many customers there are.
+      * @param afterUsername Only customers with usernames after this are
+      * returned. Null for the first page.
+      * @param namePrefix Only customers whose name starts with this are
+      * returned. Null or empty for all customers.
+      * @param pageSize The most customers to return
+      * @return The page of customers. Shorter than pageSize on the last page.
+      * @throws SQLException If a database error occurs
+      */
+    public ArrayList<Customer> getCustomersPage(
+        String afterUsername, String namePrefix, int pageSize)
+        throws SQLException
+    {
+        PreparedStatement pstmt = generalStatements.prepare(
+            "SELECT USERNAME, NAME, ADDRESS, PHONE FROM CUSTOMERS "
+           +"WHERE USERNAME > ? AND NAME LIKE ? ESCAPE '\\' "
+           +"ORDER BY USERNAME "
+           +"LIMIT ?"
+        );
+        pstmt.setString(1, afterUsername == null ? "" : afterUsername);
+        pstmt.setString(2, likePrefix(namePrefix));
+        pstmt.setInt(3, pageSize);
+
+        ArrayList<Customer> customers = new ArrayList<Customer>(pageSize);
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            customers.add (
+                new Customer (
+                    rs.getString(1),
+                    rs.getString(2),
+                    rs.getString(3),
+                    rs.getString(4)
+                )
+            );
+        }
+        rs.close();
+        return customers;
+    }
+
+    /** Makes a LIKE pattern that matches strings starting with the prefix.
+      * Wildcards in the prefix are escaped with a backslash.
+      * @param prefix The prefix, or null to match everything
+      */
+    private static String likePrefix(String prefix) {
+        if (prefix == null) {
+            return "%";
+        }
+        return prefix.replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_")
+            + "%";
+    }
+
     /** Adds a user to the database by asking for their username and password
       * from the scanner. Used on the command line for testing.
       * @param sc The method will take input from this Scaner.
@@ -618,36 +1300,70 @@ public class DatabaseManager {
       * @return The UserType of the given username
       * @throws SQLException If there was a database error */
     public UserType getUserType(String username) throws SQLException {
-        Statement stmt = generalConnection.createStatement();
-        String queryStr = "SELECT COUNT(USERNAME) FROM %s WHERE USERNAME='%s'";
-        
-        String[] userTypes = {"BUSINESS", "SUPERUSER"};
-        /* Check for business or superuser */
-        for (String userType : userTypes) {
-            ResultSet rs = stmt.executeQuery(
-                String.format(queryStr, userType, username)
-            );
-            rs.next();
-            if (rs.getInt(1) == 1) {
-                if (userType.equals("BUSINESS")) {
-                    return UserType.BUSINESS;
-                }
-                else if (userType.equals("SUPERUSER")) {
-                    return UserType.SUPERUSER;
-                }
+        synchronized (userTypeCache) {
+            CachedUserType cached = userTypeCache.get(username);
+            if (cached != null && cached.expiresAt - System.nanoTime() > 0) {
+                return cached.type;
             }
         }
-        /* Check for customer - if not customer, then non-existant */
-        ResultSet rs = stmt.executeQuery(
-            String.format(queryStr, "CREDENTIALS", username)
+
+        PreparedStatement pstmt = generalStatements.prepare(
+            "SELECT B.USERNAME, S.USERNAME FROM CREDENTIALS C "
+            +"LEFT JOIN BUSINESS B ON B.USERNAME = C.USERNAME "
+            +"LEFT JOIN SUPERUSER S ON S.USERNAME = C.USERNAME "
+            +"WHERE C.USERNAME=?"
         );
-        rs.next();
-        if (rs.getInt(1) == 1) { return UserType.CUSTOMER; }
-        else { return UserType.NON_EXISTANT; }
+        pstmt.setString(1, username);
+        UserType type = UserType.NON_EXISTANT;
+        ResultSet rs = pstmt.executeQuery();
+        if (rs.next()) {
+            type = userTypeOf(rs.getString(1), rs.getString(2));
+            cacheUserType(username, type);
+        }
+        rs.close();
+        return type;
     }
 
-    /** Gets all of the appointments in the system within the date range of
-     *  7 days starting from today
+    /** @param business The user's BUSINESS.USERNAME, null if not a business
+      * @param superuser The user's SUPERUSER.USERNAME, null if not a superuser
+      * @return The type of a user that has credentials */
+    private static UserType userTypeOf(String business, String superuser) {
+        if (business != null) {
+            return UserType.BUSINESS;
+        }
+        else if (superuser != null) {
+            return UserType.SUPERUSER;
+        }
+        return UserType.CUSTOMER;
+    }
+
+    private void cacheUserType(String username, UserType type) {
+        synchronized (userTypeCache) {
+            userTypeCache.put(username, new CachedUserType(type,
+                System.nanoTime() + USER_TYPE_CACHE_NANOS));
+        }
+    }
+
+    /** Forgets every cached user type, after users are added or removed */
+    private void invalidateUserTypes() {
+        synchronized (userTypeCache) {
+            userTypeCache.clear();
+        }
+    }
+
+    /** A UserType and the System.nanoTime() it should be looked up again at */
+    private static class CachedUserType {
+        final UserType type;
+        final long expiresAt;
+
+        CachedUserType(UserType type, long expiresAt) {
+            this.type = type;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** Gets all of the appointments in the system from midnight at the start
+     *  of this Sunday until midnight at the start of next Sunday
      *  @return An ArrayList of Appointment objects representing all the 
      *  appointments within the date range.
      *  @throws SQLException If a general database error occurs
@@ -655,95 +1371,335 @@ public class DatabaseManager {
     public ArrayList<Appointment> getThisWeeksAppointments()
         throws SQLException
     {
-        ArrayList<Appointment> appointments = new ArrayList<Appointment>();
-        Statement stmt = businessConnection.createStatement();
+        Calendar cal = startOfThisWeek();
+        Date weekStart = cal.getTime();
+        cal.add(Calendar.DAY_OF_MONTH, 7);
 
-        Calendar cal = Calendar.getInstance();
+        ArrayList<Appointment> appointments = new ArrayList<Appointment>();
+        getAppointments(weekStart, cal.getTime(), ALL_EMPLOYEES,
+            appointments::add);
+        return appointments;
+    }
+
+    /** @return Midnight at the start of this Sunday, the first day shown in
+      * the week views
+      */
+    private static Calendar startOfThisWeek() {
+        Calendar cal = Calendar.getInstance();
         cal.set(Calendar.DAY_OF_WEEK, Calendar.SUNDAY);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal;
+    }
 
-        String dateStr = String.format("DATE '%04d-%02d-%02d'",
-                 cal.get(Calendar.YEAR),
-                 cal.get(Calendar.MONTH)+1,
-                 cal.get(Calendar.DAY_OF_MONTH)
-                );
+    /** Passes every appointment from the start of one date until the start of
+     *  another to the consumer, in order of date and time. Rows are fetched
+     *  and handed over APPOINTMENT_FETCH_SIZE at a time, so a range of any
+     *  length can be read without holding all of it in memory.
+     *  The consumer must not query appointments itself while it is called.
+     *  @param from The earliest date and time to include
+     *  @param to The date and time to stop at. Appointments at exactly this
+     *  time are not included.
+     *  @param employeeFilter The ID of the employee whose appointments to
+     *  read, or ALL_EMPLOYEES for everyone's
+     *  @param consumer Called with each appointment
+     *  @return How many appointments were passed to the consumer
+     *  @throws SQLException If a general database error occurs
+     */
+    public int getAppointments(Date from, Date to, long employeeFilter,
+        Consumer<Appointment> consumer)
+        throws SQLException
+    {
+        if (businessConnection == null || businessConnection.isClosed()) {
+            throw new SQLException("Not connected to a business");
+        }
 
-        ResultSet rs = stmt.executeQuery(
-            "SELECT * FROM Appointment "
-            +"WHERE ("
-            +"    date_and_time >= "+dateStr
-            +"    AND"
-            +"    date_and_time <= "+dateStr+" + INTERVAL '7' DAY"
-            +") "
-        );
-        while (rs.next()) {
-            try {
-                appointments.add(
-                    new Appointment(
-                        new Date(rs.getTimestamp("DATE_AND_TIME").getTime()),
-                        rs.getInt("APPOINTMENT_TYPE"),
-                        rs.getLong("EMPLOYEE"),
-                        getCustomer(rs.getString("CUSTOMER"))
-                    )
-                );
-            }
-            catch (SQLException sqle) {
-                logger.warning(
-                    "Error getting appointment. Error code: "
-                        +sqle.getErrorCode()
-                ); 
-            }
+        PreparedStatement pstmt;
+        if (employeeFilter == ALL_EMPLOYEES) {
+            pstmt = tenant.statements.prepare(
+                "SELECT DATE_AND_TIME, APPOINTMENT_TYPE, EMPLOYEE, CUSTOMER, "
+                +"APT_ID FROM APPOINTMENT "
+                +"WHERE DATE_AND_TIME >= ? AND DATE_AND_TIME < ? "
+                +"ORDER BY DATE_AND_TIME"
+            );
         }
-        return appointments;
+        else {
+            pstmt = tenant.statements.prepare(
+                "SELECT DATE_AND_TIME, APPOINTMENT_TYPE, EMPLOYEE, CUSTOMER, "
+                +"APT_ID FROM APPOINTMENT "
+                +"WHERE EMPLOYEE = ? "
+                +"AND DATE_AND_TIME >= ? AND DATE_AND_TIME < ? "
+                +"ORDER BY DATE_AND_TIME"
+            );
+            pstmt.setLong(1, employeeFilter);
+        }
+        // The filtered query has EMPLOYEE first, so the dates go after it
+        int dateParam = employeeFilter == ALL_EMPLOYEES ? 1 : 2;
+        pstmt.setTimestamp(dateParam, new Timestamp(from.getTime()));
+        pstmt.setTimestamp(dateParam + 1, new Timestamp(to.getTime()));
+        pstmt.setFetchSize(APPOINTMENT_FETCH_SIZE);
+
+        // Rows whose customer is missing are read but not passed on
+        final int[] passed = { 0 };
+        Consumer<Appointment> counted = apt -> {
+            ++passed[0];
+            consumer.accept(apt);
+        };
+        ResultSet rs = pstmt.executeQuery();
+        try {
+            int read;
+            do {
+                read = readAppointments(rs, APPOINTMENT_FETCH_SIZE, counted);
+            } while (read == APPOINTMENT_FETCH_SIZE);
+        } finally {
+            rs.close();
+        }
+        return passed[0];
     }
 
-    /** Attempts to save the appointment
-      * @param cust The customer to ask for a booking
-      * @param time The time to ask for a booking
-      * @return Whether the booking could be made. This depends on whether
-      * there is a free employee at the given time.
-      * @throws SQLException If a database error occurred
+    /** Reads up to maxRows rows of the result set as Appointments and passes
+      * them to the consumer. The customers of the rows read are looked up
+      * together before any are passed on. The result set is left open.
+      * @param rs A result set with the columns DATE_AND_TIME,
+      * APPOINTMENT_TYPE, EMPLOYEE, CUSTOMER, APT_ID in that order
+      * @param maxRows The most rows to read
+      * @param consumer Called with each appointment, in the order of the
+      * rows. Appointments whose customer does not exist are left out.
+      * @return How many rows were read. Less than maxRows once the result set
+      * has run out.
+      * @throws SQLException If a database error occurs
       */
-    public boolean saveAppointment(Appointment apt)
+    private int readAppointments(ResultSet rs, int maxRows,
+        Consumer<Appointment> consumer)
         throws SQLException
     {
-        if (businessConnection == null || businessConnection.isClosed()) {
-            throw new SQLException("Not connected to a business");
+        ArrayList<Date> dates = new ArrayList<Date>();
+        ArrayList<Integer> types = new ArrayList<Integer>();
+        ArrayList<Long> employees = new ArrayList<Long>();
+        ArrayList<String> usernames = new ArrayList<String>();
+        ArrayList<Long> ids = new ArrayList<Long>();
+        while (dates.size() < maxRows && rs.next()) {
+            dates.add(new Date(rs.getTimestamp(1).getTime()));
+            types.add(rs.getInt(2));
+            employees.add(rs.getLong(3));
+            usernames.add(rs.getString(4));
+            ids.add(rs.getLong(5));
         }
 
-        // Get the assigned employee
-        Employee emp = getEmployee(apt.getEmployeeID());
-        System.out.println("Employee got: "+emp);
-        // If they are not free at appointment time, reject
-        if (emp.appointmentHours.contains(apt.getDate())) {
-            System.out.println("DBM:saveAppointment: Returning false because"
-                + " employee has appointment at given time");
-            return false;
+        HashMap<String, Customer> customers = getCustomers(usernames);
+        for (int i = 0; i < dates.size(); ++i) {
+            Customer customer = customers.get(usernames.get(i));
+            if (customer == null) {
+                logger.warning("Skipping appointment at "+dates.get(i)
+                    +": no customer "+usernames.get(i));
+                continue;
+            }
+            Appointment apt = new Appointment(
+                dates.get(i),
+                types.get(i),
+                employees.get(i),
+                customer
+            );
+            apt.setAppointmentID(ids.get(i));
+            consumer.accept(apt);
         }
+        return dates.size();
+    }
 
-        // Add the appointment to the database
-        PreparedStatement pstmt = businessConnection.prepareStatement(
-            "INSERT INTO APPOINTMENT "
-           +"VALUES (default, ?, ?, ?, ?)"
-        );
-        pstmt.setTimestamp(1, new java.sql.Timestamp(apt.getDate().getTime()));
+    /** Adds an appointment to the database, only if the employee has
+      * nothing booked that overlaps it. Only appointments starting less than
+      * the longest duration before it can reach it, so the search is a short
+      * range of the (EMPLOYEE, DATE_AND_TIME) index.
+      * APPOINTMENT_SLOT_UNIQUE catches anyone who books the same start time
+      * between the check and the insert.
+      * Parameters are set by setInsertIfFree. Inserts no row if the time is
+      * taken.
+      */
+    private static final String SQL_INSERT_IF_FREE =
+        "INSERT INTO APPOINTMENT "
+       +"(DATE_AND_TIME, APPOINTMENT_TYPE, EMPLOYEE, CUSTOMER) "
+       +"SELECT CAST(? AS TIMESTAMP), CAST(? AS INTEGER), "
+       +"CAST(? AS INTEGER), CAST(? AS VARCHAR(20)) "
+       +"FROM (VALUES(0)) "
+       +"WHERE NOT EXISTS ("
+       +"    SELECT 1 FROM APPOINTMENT A "
+       +"    JOIN APPOINTMENTTYPE T ON T.TYPE_ID = A.APPOINTMENT_TYPE "
+       +"    WHERE A.EMPLOYEE = ? "
+       +"    AND A.DATE_AND_TIME > ? AND A.DATE_AND_TIME < ? "
+       +"    AND TIMESTAMPADD(SQL_TSI_MINUTE, T.DURATION_MINUTES, "
+       +"        A.DATE_AND_TIME) > ?"
+       +")";
+
+    /** Sets the parameters of SQL_INSERT_IF_FREE to book the appointment */
+    private void setInsertIfFree(PreparedStatement pstmt, Appointment apt)
+        throws SQLException
+    {
+        long start = apt.getDate().getTime();
+        long end = start + tenant.appointmentTypes
+            .getDuration(apt.getAppointmentType()).toMillis();
+        long earliest = start
+            - tenant.appointmentTypes.getLongestDuration().toMillis();
+        Timestamp time = new Timestamp(start);
+        pstmt.setTimestamp(1, time);
         pstmt.setInt(2, apt.getAppointmentType());
         pstmt.setLong(3, apt.getEmployeeID());
         pstmt.setString(4, apt.getCustomer().username);
+        pstmt.setLong(5, apt.getEmployeeID());
+        pstmt.setTimestamp(6, new Timestamp(earliest));
+        pstmt.setTimestamp(7, new Timestamp(end));
+        pstmt.setTimestamp(8, time);
+    }
+
+    /** Attempts to save the appointment. The check and the booking are one
+      * INSERT, so it costs the same however many appointments the employee
+      * has, and two people can never book the same employee and time.
+      * Appointments last as long as their type's duration, and one cannot
+      * be booked over any part of another.
+      * @param apt The appointment to book
+      * @return Whether the booking could be made. False if the employee
+      * already has an appointment overlapping that time.
+      * @throws SQLException If a database error occurred
+      */
+    public boolean saveAppointment(Appointment apt)
+        throws SQLException
+    {
+        if (businessConnection == null || businessConnection.isClosed()) {
+            throw new SQLException("Not connected to a business");
+        }
+
+        PreparedStatement pstmt = tenant.statements.prepareInsert(
+            SQL_INSERT_IF_FREE);
+        setInsertIfFree(pstmt, apt);
+        boolean booked = false;
         try {
-            pstmt.execute();
+            if (pstmt.executeUpdate() == 0) {
+                logger.info("Booking conflict: empl_id="+apt.getEmployeeID()
+                    +" already has an appointment overlapping "+apt.getDate());
+            } else {
+                apt.setAppointmentID(generatedKey(pstmt));
+                booked = true;
+            }
         } catch (SQLIntegrityConstraintViolationException sqlie) {
-            // Return false e.g. if employee, appointmentType were bogus
+            // Return false e.g. if employee, appointmentType were bogus,
+            // or someone else got the slot first.
             // SQLException is meant to indicate error, but this is expected
             // behaviour for referential integrity
-            return false;
+            logger.info("Booking rejected for empl_id="+apt.getEmployeeID()
+                +" at "+apt.getDate()+": "+sqlie.getMessage());
         }
 
+        // Even a turned down INSERT holds locks on APPOINTMENT until the
+        // transaction ends, which would stall every other session booking
+        // with this business
         businessConnection.commit();
 
-        return true;
+        return booked;
+    }
+
+    /** Saves several appointments in one transaction, such as the weeks of
+      * a recurring series, taking about as long as saving one.
+      * Each appointment is booked with the same check as saveAppointment,
+      * and they are all sent to the database as a single batch, run in the
+      * order of the list. So each is checked against everything already
+      * booked, including the ones before it, and nobody can book an
+      * overlapping time between the check and the insert.
+      * @param apts The appointments, in any order. Earlier ones win when
+      * two of them overlap.
+      * @return Whether each appointment was saved, in the same order as
+      * apts. False if the employee already has an appointment overlapping
+      * it, or it was otherwise rejected, e.g. because its employee does not
+      * exist. Saved appointments are given their IDs.
+      * @throws SQLException If a database error occurs. Nothing is saved in
+      * that case.
+      */
+    public boolean[] saveAppointments(List<Appointment> apts)
+        throws SQLException
+    {
+        if (businessConnection == null || businessConnection.isClosed()) {
+            throw new SQLException("Not connected to a business");
+        }
+
+        boolean[] saved = new boolean[apts.size()];
+        // The appointments still to be sent; rejected ones are taken out
+        ArrayList<Integer> pending = new ArrayList<Integer>(apts.size());
+        for (int i = 0; i < apts.size(); ++i) {
+            pending.add(i);
+        }
+
+        PreparedStatement inserts = tenant.statements.prepareInsert(
+            SQL_INSERT_IF_FREE);
+        // Rolling back only to here leaves any other uncommitted work alone.
+        // Null once rolled back to, as that ends the savepoint.
+        Savepoint before = null;
+        try {
+            while (!pending.isEmpty()) {
+                before = businessConnection.setSavepoint();
+                for (int i : pending) {
+                    setInsertIfFree(inserts, apts.get(i));
+                    inserts.addBatch();
+                }
+                int[] counts;
+                try {
+                    counts = inserts.executeBatch();
+                } catch (BatchUpdateException bue) {
+                    // The batch stops at the one it could not insert, e.g.
+                    // if its employee or type was bogus. Send the rest again
+                    // without it.
+                    businessConnection.rollback(before);
+                    before = null;
+                    inserts.clearBatch();
+                    int rejected = pending.remove(bue.getUpdateCounts().length);
+                    logger.info("Booking rejected for empl_id="
+                        +apts.get(rejected).getEmployeeID()+" at "
+                        +apts.get(rejected).getDate()+": "+bue.getMessage());
+                    continue;
+                }
+                // Rows are only inserted where the time was free
+                for (int j = 0; j < counts.length; ++j) {
+                    Appointment apt = apts.get(pending.get(j));
+                    saved[pending.get(j)] = counts[j] > 0;
+                    if (counts[j] == 0) {
+                        logger.info("Booking conflict: empl_id="
+                            +apt.getEmployeeID()+" already has an "
+                            +"appointment overlapping "+apt.getDate());
+                    }
+                }
+                ResultSet keys = inserts.getGeneratedKeys();
+                try {
+                    for (int i : pending) {
+                        if (saved[i] && keys.next()) {
+                            apts.get(i).setAppointmentID(keys.getLong(1));
+                        }
+                    }
+                } finally {
+                    keys.close();
+                }
+                break;
+            }
+        } catch (SQLException sqle) {
+            logger.severe("Error saving "+apts.size()
+                +" appointments. Rolling back.");
+            if (before != null) {
+                businessConnection.rollback(before);
+            }
+            for (Appointment apt : apts) {
+                apt.setAppointmentID(-1);
+            }
+            throw sqle;
+        } finally {
+            // Don't leave half a batch in the cached statement
+            inserts.clearBatch();
+        }
+
+        businessConnection.commit();
+        return saved;
     }
 
     /** Returns the availability of employees for these 7 days.
+      * The availability is read once and then kept in memory until it is
+      * next written, so calling this again costs only a copy.
       * @param distinct If set to true, do not return duplicate
       * WeekDates if there is more than one employee available at a given time
       * @return ArrayList<WeekDate> representing the availability of all
@@ -758,32 +1714,49 @@ public class DatabaseManager {
             throw new SQLException("Not connected to a business");
         }
 
-        ArrayList<WeekDate> availableDates = new ArrayList<WeekDate>();
-        Statement stmt = businessConnection.createStatement();
-        ResultSet rs;
-        try {
-            rs = stmt.executeQuery (
-                "SELECT "+(distinct ? "DISTINCT " : "")
-                +"AVAILABLE_DAY, AVAILABLE_TIME "
-                +"FROM AVAILABILITY "
-                +"ORDER BY AVAILABLE_DAY, AVAILABLE_TIME "
-            );
-        }
-        catch (SQLException sqle) {
-            sqle.printStackTrace();
-            throw sqle;
-        }
+        if (tenant.availability == null) {
+            ArrayList<WeekDate> availableDates = new ArrayList<WeekDate>();
+            ResultSet rs;
+            try {
+                rs = tenant.statements.prepare(
+                    "SELECT AVAILABLE_DAY, AVAILABLE_TIME "
+                    +"FROM AVAILABILITY "
+                    +"ORDER BY AVAILABLE_DAY, AVAILABLE_TIME "
+                ).executeQuery();
+            }
+            catch (SQLException sqle) {
+                sqle.printStackTrace();
+                throw sqle;
+            }
 
-        while (rs.next()) {
-            availableDates.add(
-                new WeekDate(DayOfWeek.of(rs.getInt(1)), rs.getInt(2))
-            );
-        }
+            while (rs.next()) {
+                availableDates.add(
+                    WeekDate.of(DayOfWeek.of(rs.getInt(1)), rs.getInt(2))
+                );
+            }
+            rs.close();
 
-        System.out.println("Available dates:"+availableDates);
-        System.out.flush();
+            logger.fine("Available dates:"+availableDates);
+            tenant.availability = Collections.unmodifiableList(availableDates);
+        }
 
-        return availableDates;
+        if (!distinct) {
+            return new ArrayList<WeekDate>(tenant.availability);
+        }
+        if (tenant.distinctAvailability == null) {
+            // Duplicates are next to each other, as the rows are in order
+            ArrayList<WeekDate> distinctDates = new ArrayList<WeekDate>();
+            for (WeekDate wd : tenant.availability) {
+                if (distinctDates.isEmpty()
+                    || !distinctDates.get(distinctDates.size() - 1).equals(wd))
+                {
+                    distinctDates.add(wd);
+                }
+            }
+            tenant.distinctAvailability =
+                Collections.unmodifiableList(distinctDates);
+        }
+        return new ArrayList<WeekDate>(tenant.distinctAvailability);
     }
 
     /** Gets an ArrayList containg all the names and IDs of all employees
@@ -797,12 +1770,11 @@ public class DatabaseManager {
         }
 
         ArrayList<String> emplNames = new ArrayList<String>();
-        Statement stmt = businessConnection.createStatement();
         ResultSet rs = null;
         try {
-            rs = stmt.executeQuery(
+            rs = tenant.statements.prepare(
                 "SELECT EMPL_NAME, EMPL_ID FROM EMPLOYEE"
-            );
+            ).executeQuery();
         } catch (SQLException sqle) {
             logger.warning("SQL Error getting employee names and IDs:");
             sqle.printStackTrace();
@@ -816,12 +1788,33 @@ public class DatabaseManager {
         return emplNames;
     }
 
-    /** Gets the employee with the given employee id as an object
+    /** Gets the employee with the given employee id as an object, with
+      * this week's appointments loaded. See getEmployee(long, Date, Date).
       * @param empl_id The employee id
       * @return The employee as an object with associated working
       * hours and appointment hours
       */
     public Employee getEmployee(long empl_id) throws SQLException {
+        Calendar cal = startOfThisWeek();
+        Date weekStart = cal.getTime();
+        cal.add(Calendar.DAY_OF_MONTH, 7);
+        return getEmployee(empl_id, weekStart, cal.getTime());
+    }
+
+    /** Gets the employee with the given employee id as an object. Only the
+      * appointments from the start of one date until the start of another
+      * are loaded, so this costs the same however long the employee has
+      * worked here. Appointments outside the window are read from the
+      * database when Employee.getAppointments asks for them.
+      * @param empl_id The employee id
+      * @param windowStart The earliest appointment time to load
+      * @param windowEnd The appointment time to stop loading at
+      * @return The employee as an object with associated working
+      * hours and the appointments in the window
+      */
+    public Employee getEmployee(long empl_id, Date windowStart, Date windowEnd)
+        throws SQLException
+    {
         if (businessConnection == null || businessConnection.isClosed()) {
             throw new SQLException("Not connected to a business");
         }
@@ -832,14 +1825,16 @@ public class DatabaseManager {
         ArrayList<WeekDate> available_hours = new ArrayList<WeekDate>();
         ArrayList<Appointment> appointments = new ArrayList<Appointment>();
 
-        Statement stmt = businessConnection.createStatement();
+        PreparedStatement pstmt;
         ResultSet rs = null;
 
         // Get name
         try {
-            rs = stmt.executeQuery(
-                "SELECT EMPL_NAME FROM EMPLOYEE WHERE EMPL_ID = "+empl_id
+            pstmt = tenant.statements.prepare(
+                "SELECT EMPL_NAME FROM EMPLOYEE WHERE EMPL_ID = ?"
             );
+            pstmt.setLong(1, empl_id);
+            rs = pstmt.executeQuery();
 
             rs.next();
             empl_name = (rs.getString(1));
@@ -856,32 +1851,16 @@ public class DatabaseManager {
             throw sqle;
         }
 
-        // Get appointment hours
+        // Get appointment hours in the window
         try {
-            rs = stmt.executeQuery (
-                "SELECT DATE_AND_TIME,APPOINTMENT_TYPE,EMPLOYEE, CUSTOMER "
-               +"FROM APPOINTMENT "
-               +"WHERE EMPLOYEE="+empl_id
-               );
-
-            while (rs.next()) {
-                logger.fine("Found appointment date: "+rs.getDate(1));
-                Date currAptDate = new Date(rs.getTimestamp(1).getTime());
-                appointments.add(
-                    new Appointment (
-                        currAptDate, //DATE_AND_TIME
-                        rs.getInt(2), // APPOINTMENT_TYPE
-                        rs.getLong(3), // EMPLOYEE
-                        getCustomer(rs.getString(4)) // CUSTOMER
-                    )
-                );
-            }
+            getAppointments(windowStart, windowEnd, empl_id, appointments::add);
         } catch (SQLException sqle) {
             sqle.printStackTrace();
             throw sqle;
         }
 
-        return new Employee(empl_id, empl_name, available_hours, appointments);
+        return new Employee(empl_id, empl_name, available_hours, appointments,
+            windowStart, windowEnd, this);
     }
 
     /** Gets the given employee's available days and times on the roster
@@ -897,20 +1876,21 @@ public class DatabaseManager {
             throw new SQLException("Not connected to a business");
         }
 
-        Statement stmt = businessConnection.createStatement();
         ResultSet rs = null;
         ArrayList<WeekDate> availWeekDates = new ArrayList<WeekDate>();
 
         try {
-            rs = stmt.executeQuery (
+            PreparedStatement pstmt = tenant.statements.prepare(
                 "SELECT AVAILABLE_DAY, AVAILABLE_TIME "+
                 "FROM EMPLOYEE EMP JOIN AVAILABILITY AVA "+
                 "ON EMP.EMPL_ID = AVA.EMPLOYEE "+
-                "WHERE EMPL_ID = "+employeeID
+                "WHERE EMPL_ID = ?"
             );
+            pstmt.setLong(1, employeeID);
+            rs = pstmt.executeQuery();
 
             while (rs.next()) {
-                WeekDate wd = new WeekDate(
+                WeekDate wd = WeekDate.of(
                         DayOfWeek.of(rs.getInt(1)), rs.getInt(2)
                 );
                 System.out.println("Found available WeekDate: "+wd);
@@ -926,9 +1906,40 @@ public class DatabaseManager {
         return availWeekDates;
     }
 
-    /** Adds an employee with the given name. The ID is generated automatically.
-      * To get the new employee as an object, use getEmployee after calling this
-      * method.
+    /** Gets the available days and times of every employee on the roster,
+      * in one query
+      * @return Each employee's availability by employee ID. Employees with no
+      * availability are left out.
+      * @throws SQLException If a database error occurs
+      */
+    public HashMap<Long, ArrayList<WeekDate>> getAvailabilityByEmployee()
+        throws SQLException
+    {
+        if (businessConnection == null || businessConnection.isClosed()) {
+            throw new SQLException("Not connected to a business");
+        }
+
+        HashMap<Long, ArrayList<WeekDate>> availability =
+            new HashMap<Long, ArrayList<WeekDate>>();
+        ResultSet rs = tenant.statements.prepare(
+            "SELECT EMPLOYEE, AVAILABLE_DAY, AVAILABLE_TIME FROM AVAILABILITY"
+        ).executeQuery();
+        while (rs.next()) {
+            long employeeID = rs.getLong(1);
+            ArrayList<WeekDate> hours = availability.get(employeeID);
+            if (hours == null) {
+                hours = new ArrayList<WeekDate>();
+                availability.put(employeeID, hours);
+            }
+            hours.add(WeekDate.of(DayOfWeek.of(rs.getInt(2)), rs.getInt(3)));
+        }
+        rs.close();
+        return availability;
+    }
+
+    /** Adds an employee with the given name. The ID is generated automatically
+      * and read back from the insert. The new employee has no availability or
+      * appointments, so there is no need to getEmployee it afterwards.
       * @param name The name of a new employee to add
       * @return The new ID of the employee if successful, or -1 for failure
       * @throw SQLException If a database error occurs
@@ -939,12 +1950,14 @@ public class DatabaseManager {
         }
 
         // Insert an employee with the given name
-        Statement stmt = businessConnection.createStatement();
+        PreparedStatement pstmt;
         try {
-            stmt.execute (
+            pstmt = tenant.statements.prepareInsert(
                 "INSERT INTO EMPLOYEE (EMPL_ID, EMPL_NAME) "
-                +"VALUES (default, '"+name+"')"
+                +"VALUES (default, ?)"
             );
+            pstmt.setString(1, name);
+            pstmt.executeUpdate();
         } catch (SQLException sqle) {
             logger.severe(
                 "Error creating employee(name="+name+"):"
@@ -953,30 +1966,174 @@ public class DatabaseManager {
             return -1;
         }
 
-        // Return max ID
-        long maxID;
-        ResultSet rs = null;
-        try {
-            rs = stmt.executeQuery (
-                "SELECT MAX(EMPL_ID) FROM EMPLOYEE"
-            );
-            rs.next();
-            maxID = rs.getLong(1);
-        } catch (SQLException sqle) {
-            logger.severe(
-                "Error getting max employee_id (EMPL_ID) from database:"
-            );
-            sqle.printStackTrace();
-            // It was added, but we can't know the ID, so throw an exception
-            throw sqle;
+        // It was added, so if we can't read the ID, throw an exception
+        return generatedKey(pstmt);
+    }
+
+    /** Adds a new type of appointment that customers can book, which goes
+      * for AppointmentType.DEFAULT_DURATION
+      * @param name The name of the appointment type shown to customers
+      * @param costCents How much the appointment costs, in cents
+      * @return The TYPE_ID of the new appointment type
+      * @throws SQLException If a database error occurs
+      */
+    public int addAppointmentType(String name, int costCents)
+        throws SQLException
+    {
+        return addAppointmentType(name, costCents,
+            AppointmentType.DEFAULT_DURATION);
+    }
+
+    /** Adds a new type of appointment that customers can book
+      * @param name The name of the appointment type shown to customers
+      * @param costCents How much the appointment costs, in cents
+      * @param duration How long the appointment goes for, in whole minutes
+      * @return The TYPE_ID of the new appointment type
+      * @throws SQLException If a database error occurs
+      * @throws IllegalArgumentException If duration is under a minute
+      */
+    public int addAppointmentType(String name, int costCents,
+        Duration duration) throws SQLException
+    {
+        if (businessConnection == null || businessConnection.isClosed()) {
+            throw new SQLException("Not connected to a business");
+        }
+        checkDuration(duration);
+
+        PreparedStatement pstmt = tenant.statements.prepareInsert(
+            "INSERT INTO APPOINTMENTTYPE "
+            +"(TYPE_ID, NAME, COST_CENTS, DURATION_MINUTES) "
+            +"VALUES (default, ?, ?, ?)"
+        );
+        pstmt.setString(1, name);
+        pstmt.setInt(2, costCents);
+        pstmt.setInt(3, (int)duration.toMinutes());
+        pstmt.executeUpdate();
+        int typeID = (int)generatedKey(pstmt);
+        businessConnection.commit();
+        tenant.appointmentTypes.put(new AppointmentType(
+            typeID, Duration.ofMinutes(duration.toMinutes()), name, costCents
+        ));
+        return typeID;
+    }
+
+    /** Overwrites the name, cost and duration of an existing appointment
+      * type. Appointments already booked take the new duration too.
+      * @param type The type, with the TYPE_ID of the one to overwrite
+      * @return Whether there was a type with that ID to overwrite
+      * @throws SQLException If a database error occurs
+      * @throws IllegalArgumentException If the duration is under a minute
+      */
+    public boolean saveAppointmentType(AppointmentType type)
+        throws SQLException
+    {
+        if (businessConnection == null || businessConnection.isClosed()) {
+            throw new SQLException("Not connected to a business");
+        }
+        checkDuration(type.getDuration());
+
+        PreparedStatement pstmt = tenant.statements.prepare(
+            "UPDATE APPOINTMENTTYPE "
+            +"SET NAME = ?, COST_CENTS = ?, DURATION_MINUTES = ? "
+            +"WHERE TYPE_ID = ?"
+        );
+        pstmt.setString(1, type.getHumanReadableName());
+        pstmt.setInt(2, type.getCostCents());
+        pstmt.setInt(3, (int)type.getDuration().toMinutes());
+        pstmt.setInt(4, type.getTypeID());
+        if (pstmt.executeUpdate() == 0) {
+            return false;
+        }
+        businessConnection.commit();
+        // The registry holds what was stored, which is whole minutes
+        tenant.appointmentTypes.put(new AppointmentType(type.getTypeID(),
+            Duration.ofMinutes(type.getDuration().toMinutes()),
+            type.getHumanReadableName(), type.getCostCents()));
+        return true;
+    }
+
+    /** @throws IllegalArgumentException If the duration is under a minute,
+      * the shortest that DURATION_MINUTES can hold */
+    private static void checkDuration(Duration duration) {
+        if (duration.toMinutes() < 1) {
+            throw new IllegalArgumentException(
+                "Appointment types must go for at least a minute, not "
+                +duration);
+        }
+    }
+
+    /** Gets the appointment type with the given ID from memory
+      * @return The type, or null if the business has no such type
+      * @throws SQLException If not connected to a business
+      */
+    public AppointmentType getAppointmentType(int typeID) throws SQLException {
+        if (tenant == null) {
+            throw new SQLException("Not connected to a business");
+        }
+        return tenant.appointmentTypes.get(typeID);
+    }
+
+    /** @return All of the business' appointment types, in order of ID. Read
+      * from memory.
+      * @throws SQLException If not connected to a business
+      */
+    public List<AppointmentType> getAppointmentTypes() throws SQLException {
+        if (tenant == null) {
+            throw new SQLException("Not connected to a business");
+        }
+        return tenant.appointmentTypes.getAll();
+    }
+
+    /** @return How long appointments of the type go for, or
+      * AppointmentType.DEFAULT_DURATION if the type is not known or no
+      * business is connected. Read from memory.
+      */
+    public Duration getAppointmentDuration(int typeID) {
+        if (tenant == null) {
+            return AppointmentType.DEFAULT_DURATION;
+        }
+        return tenant.appointmentTypes.getDuration(typeID);
+    }
+
+    /** @return The longest duration of any of the business' appointment
+      * types, and at least AppointmentType.DEFAULT_DURATION. An appointment
+      * starting longer ago than this cannot still be going. Read from
+      * memory.
+      */
+    public Duration getLongestAppointmentDuration() {
+        if (tenant == null) {
+            return AppointmentType.DEFAULT_DURATION;
         }
+        return tenant.appointmentTypes.getLongestDuration();
+    }
 
-        return maxID;
+    /** Gets the identity value of the row the statement just inserted
+      * @param pstmt A statement from StatementCache.prepareInsert that has
+      * inserted one row
+      * @throws SQLException If no key was generated
+      */
+    private static long generatedKey(PreparedStatement pstmt)
+        throws SQLException
+    {
+        ResultSet rs = pstmt.getGeneratedKeys();
+        try {
+            if (!rs.next()) {
+                throw new SQLException("Insert did not generate a key");
+            }
+            return rs.getLong(1);
+        } finally {
+            rs.close();
+        }
     }
 
     /** Tries to update the given employee's information in the database.
+      * Only the availability that changed is written: slots no longer in
+      * employee.workingHours are deleted and new ones are inserted, each as
+      * one batch, all in one transaction.
       * @param employee The employee object representing the new data.
       * @return Whether the update was successful.
+      * @throws SQLException If a database error occurs. Nothing is changed
+      * in that case.
       */
     public boolean updateEmployee(Employee employee) throws SQLException {
         if (businessConnection == null || businessConnection.isClosed()) {
@@ -984,75 +2141,109 @@ public class DatabaseManager {
         }
 
         businessConnection.commit();
-        int updateCount = 0;
-        Statement stmt = businessConnection.createStatement();
+        PreparedStatement pstmt;
+        PreparedStatement deletes = null;
+        PreparedStatement inserts = null;
+        boolean changed = false;
 
-        /* Update name */
         try {
-            updateCount = stmt.executeUpdate(
+            /* Update name */
+            pstmt = tenant.statements.prepare(
                 "UPDATE EMPLOYEE"
-                +" SET EMPL_NAME = '"+employee.name+"'"
-                +" WHERE EMPL_ID = "+employee.id
+                +" SET EMPL_NAME = ?"
+                +" WHERE EMPL_ID = ?"
             );
+            pstmt.setString(1, employee.name);
+            pstmt.setLong(2, employee.id);
+            pstmt.executeUpdate();
+
+            /* Work out which availability was added and removed */
+            WeekDateSet requested =
+                new WeekDateSet(employee.workingHours.size());
+            for (WeekDate currDate : employee.workingHours) {
+                requested.add(currDate);
+            }
 
-        } catch (SQLException sqle) {
-            logger.severe("Error updating employee name for:"+employee
-            +". Rolling back.");
-            sqle.printStackTrace();
-            businessConnection.rollback();
-        }
-
-        /* Remove all availability for this employee - so we can add all given 
-           availability. Rollback will save us if we fail */
-        for (WeekDate currAvailability : employee.workingHours) {
-            Date availDate = DayOfWeekConversion.wd2cal(currAvailability).getTime();
-            if (employee.appointmentHours.contains(availDate)) {
-                System.err.println("Can't remove availability for employee:"
-                    +employee.name+"#"+employee.id+" at "+availDate+". "
-                    +"They have an appointment at that time"
-                );
+            pstmt = tenant.statements.prepare(
+                "SELECT AVAILABLE_DAY, AVAILABLE_TIME FROM AVAILABILITY "
+               +"WHERE EMPLOYEE = ?"
+            );
+            pstmt.setLong(1, employee.id);
+            ResultSet rs = pstmt.executeQuery();
+            WeekDateSet stored = new WeekDateSet();
+            while (rs.next()) {
+                try {
+                    stored.add(WeekDate.pack(rs.getInt(1), rs.getInt(2)));
+                } catch (IllegalArgumentException iae) {
+                    // Not a slot anyone could ask for, so leave it be
+                    logger.warning("Skipping invalid availability for empl_id="
+                        +employee.id+": "+iae.getMessage());
+                }
             }
-            else {
-                // TODO
+            rs.close();
+
+            deletes = tenant.statements.prepare(
+                "DELETE FROM AVAILABILITY "
+               +"WHERE EMPLOYEE = ? AND AVAILABLE_TIME = ? AND AVAILABLE_DAY = ?"
+            );
+            int deleteCount = 0;
+            for (int packed : stored.toArray()) {
+                if (!requested.contains(packed)) {
+                    WeekDate wd = WeekDate.ofPacked(packed);
+                    deletes.setLong(1, employee.id);
+                    deletes.setInt(2, wd.getTime());
+                    deletes.setInt(3, wd.getDayOfWeek().getValue());
+                    deletes.addBatch();
+                    ++deleteCount;
+                }
             }
-                /*
-                throw new SQLIntegrityConstraintViolationException(
-                    "Cannot remove employee when they have an appointment"
-                );*/
-        }
 
-        try {
-            stmt.execute("DELETE FROM AVAILABILITY"
-            +" WHERE EMPLOYEE="+employee.id);
-        } catch (SQLException sqle) {
-            System.err.println(
-                "DatabaseManager: Failed to delete from availability, empl_id="
-                    +employee.id+". Rolling back."
+            inserts = tenant.statements.prepare(
+                "INSERT INTO AVAILABILITY VALUES (?, ?, ?)"
             );
-            businessConnection.rollback();
-        }
+            int insertCount = 0;
+            for (int packed : requested.toArray()) {
+                if (!stored.contains(packed)) {
+                    WeekDate wd = WeekDate.ofPacked(packed);
+                    inserts.setLong(1, employee.id);
+                    inserts.setInt(2, wd.getTime());
+                    inserts.setInt(3, wd.getDayOfWeek().getValue());
+                    inserts.addBatch();
+                    ++insertCount;
+                }
+            }
 
-        /* Update availability - insert all availability */
-        PreparedStatement pstmt;
-        for (WeekDate currDate : employee.workingHours) {
+            /* Apply the difference */
+            changed = deleteCount + insertCount > 0;
+            if (deleteCount > 0) {
+                deletes.executeBatch();
+            }
+            if (insertCount > 0) {
+                inserts.executeBatch();
+            }
+            logger.fine("Updated availability for empl_id="+employee.id
+                +": "+deleteCount+" removed, "+insertCount+" added");
+        } catch (SQLException sqle) {
+            logger.severe("Error updating employee:"+employee
+                +". Rolling back.");
+            sqle.printStackTrace();
             try {
-                pstmt = businessConnection.prepareStatement(
-                    "INSERT INTO AVAILABILITY VALUES (?, ?, ?)"
-                );
-                pstmt.setLong(1, employee.id);
-                pstmt.setInt(2, currDate.getTime());
-                pstmt.setInt(3, currDate.getDayOfWeek().getValue());
-                updateCount += pstmt.executeUpdate();
-            } catch (SQLIntegrityConstraintViolationException sqlie) {
-                // Already exists, ignore it
-            } catch (SQLException sqle) {
-                // Something bad actually happened
-                System.err.println(
-                    "DatabaseManager: Failed to insert availability "
-                    +"for empl_id:"+employee.id+". Rolling back."
-                );
-                sqle.printStackTrace();
                 businessConnection.rollback();
+            } finally {
+                // A read between the writes and the rollback may have
+                // cached them
+                if (changed) {
+                    tenant.invalidateAvailability();
+                }
+            }
+            throw sqle;
+        } finally {
+            // Don't leave half a batch in the cached statements
+            if (deletes != null) {
+                deletes.clearBatch();
+            }
+            if (inserts != null) {
+                inserts.clearBatch();
             }
         }
 
@@ -1064,6 +2255,9 @@ public class DatabaseManager {
         // Return true even if no updates occurred - it still means we
         // guarantee the record is correct
         businessConnection.commit();
+        if (changed) {
+            tenant.invalidateAvailability();
+        }
         return true;
     }
 
@@ -1084,43 +2278,36 @@ public class DatabaseManager {
         if (businessConnection == null || businessConnection.isClosed()) {
             throw new SQLException("Not connected to a business");
         }
-        Statement stmt = businessConnection.createStatement();
+        PreparedStatement deleteEmployee = tenant.statements.prepare(
+            "DELETE FROM EMPLOYEE WHERE EMPL_ID = ?"
+        );
+        deleteEmployee.setLong(1, employee.id);
         try {
-            stmt.execute("DELETE FROM EMPLOYEE WHERE EMPL_ID="+employee.id);
+            deleteEmployee.execute();
         }
         // Employee still has appointments, availability in the system
         catch (SQLIntegrityConstraintViolationException sqlie) {
             if (force) {
                 // Delete regardless
-                stmt.execute(
-                    "DELETE FROM APPOINTMENT WHERE EMPLOYEE=0; "+
-                    "DELETE FROM AVAILABILITY WHERE EMPLOYEE=0; "+
-                    "DELETE FROM EMPLOYEE WHERE EMPL_ID=0"
-                );
+                deleteEmployeeCascade(employee.id);
                 return true;
             }
 
-            // Not forcing, only delete if we don't have any future appointments
-            Date currDate = new Date();
-            boolean dateInFuture = false;
-            for (Date aptDate : employee.appointmentHours) {
-                // Convert WeekDate to absolute date
-                System.out.println("Comparing dates "+aptDate
-                    +" and "+currDate);
-                System.out.println("aptDate.compareTo(currDate)="
-                    +aptDate.compareTo(currDate));
-                if (aptDate.compareTo(currDate) > 0) {
-                    dateInFuture = true;
-                    break;
-                }
-            }
+            // Not forcing, only delete if we don't have any future appointments.
+            // Ask the database, as the employee object only holds a window.
+            PreparedStatement countFuture = tenant.statements.prepare(
+                "SELECT COUNT(*) FROM APPOINTMENT "
+                +"WHERE EMPLOYEE = ? AND DATE_AND_TIME > ?"
+            );
+            countFuture.setLong(1, employee.id);
+            countFuture.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            ResultSet rs = countFuture.executeQuery();
+            rs.next();
+            boolean dateInFuture = rs.getInt(1) > 0;
+            rs.close();
             if (!dateInFuture) {
                 // Delete regardless
-                stmt.execute(
-                    "DELETE FROM APPOINTMENT WHERE EMPLOYEE=0; "+
-                    "DELETE FROM AVAILABILITY WHERE EMPLOYEE=0; "+
-                    "DELETE FROM EMPLOYEE WHERE EMPL_ID=0"
-                );
+                deleteEmployeeCascade(employee.id);
                 return true;
             }
             else {
@@ -1131,6 +2318,31 @@ public class DatabaseManager {
         commit();
         return true;
     }
+
+    /** Deletes the employee along with their appointments and availability,
+      * then commits.
+      * @param employeeID The ID of the employee to delete
+      * @throws SQLException If a database error occurs
+      */
+    private void deleteEmployeeCascade(long employeeID) throws SQLException {
+        String[] deletes = {
+            "DELETE FROM APPOINTMENT WHERE EMPLOYEE = ?",
+            "DELETE FROM AVAILABILITY WHERE EMPLOYEE = ?",
+            "DELETE FROM EMPLOYEE WHERE EMPL_ID = ?"
+        };
+        try {
+            for (String delete : deletes) {
+                PreparedStatement pstmt = tenant.statements.prepare(delete);
+                pstmt.setLong(1, employeeID);
+                pstmt.execute();
+            }
+            commit();
+        } finally {
+            // Once the deletes are done, whether or not they were committed
+            tenant.invalidateAvailability();
+        }
+    }
+
     /** @deprecated Marks the employee available or unavailable at the given dates and times
      *  @param employeeID The ID of the employee to mark availabilty for
      *  @param dates An ArrayList of dates representing times the employee is
@@ -1150,48 +2362,53 @@ public class DatabaseManager {
 
         int resultUpdates = 0;
         WeekDate givenWeekDate;
-        for (int dateIdx = 0; dateIdx < dates.size(); ++dateIdx) {
-            givenWeekDate = dates.get(dateIdx);
-            // Available
-            if (availability.get(dateIdx) == true) {
-                PreparedStatement pstmt = businessConnection.prepareStatement(
-                    "INSERT INTO AVAILABILITY VALUES(?, ?, ?)"
-                );
-                pstmt.setInt(1, employeeID);
-                pstmt.setInt(2, givenWeekDate.getTime());
-                pstmt.setInt(3, givenWeekDate.getDayOfWeek().getValue());
-                try {
-                    resultUpdates += pstmt.executeUpdate();
-                } catch (SQLException sqle) {
-                    System.err.println("DatabaseManager: Error inserting appointment");
-                    System.err.println("date="+givenWeekDate.toString()
-                            + ";empl_id=" + employeeID);
-                    sqle.printStackTrace();
-                    throw sqle;
+        try {
+            for (int dateIdx = 0; dateIdx < dates.size(); ++dateIdx) {
+                givenWeekDate = dates.get(dateIdx);
+                // Available
+                if (availability.get(dateIdx) == true) {
+                    PreparedStatement pstmt = tenant.statements.prepare(
+                        "INSERT INTO AVAILABILITY VALUES(?, ?, ?)"
+                    );
+                    pstmt.setInt(1, employeeID);
+                    pstmt.setInt(2, givenWeekDate.getTime());
+                    pstmt.setInt(3, givenWeekDate.getDayOfWeek().getValue());
+                    try {
+                        resultUpdates += pstmt.executeUpdate();
+                    } catch (SQLException sqle) {
+                        System.err.println("DatabaseManager: Error inserting appointment");
+                        System.err.println("date="+givenWeekDate.toString()
+                                + ";empl_id=" + employeeID);
+                        sqle.printStackTrace();
+                        throw sqle;
+                    }
                 }
-            }
-            // Unavailable
-            else {
-                PreparedStatement pstmt = businessConnection.prepareStatement(
-                    "DELETE FROM AVAILABILITY "+
-                    "WHERE EMPLOYEE = ? AND AVAILABLE_TIME = ?"
-                );
-                pstmt.setInt(1, employeeID);
-                pstmt.setTimestamp(2, new java.sql.Timestamp(givenWeekDate.getTime()));
-                System.out.format("Deleting values(%d,%s)\n", employeeID,
-                        givenWeekDate.toString());
-                try {
-                    resultUpdates += pstmt.executeUpdate();
-                    System.out.println("resultUpdates:"+resultUpdates);
-                } catch (SQLException sqle) {
-                    System.err.println("DatabaseManager: Error deleting appointment");
-                    System.err.println("date="+givenWeekDate.toString() 
-                            + ";empl_id=" + employeeID);
-                    sqle.printStackTrace();
-                    throw sqle;
+                // Unavailable
+                else {
+                    PreparedStatement pstmt = tenant.statements.prepare(
+                        "DELETE FROM AVAILABILITY "+
+                        "WHERE EMPLOYEE = ? AND AVAILABLE_TIME = ?"
+                    );
+                    pstmt.setInt(1, employeeID);
+                    pstmt.setTimestamp(2, new java.sql.Timestamp(givenWeekDate.getTime()));
+                    System.out.format("Deleting values(%d,%s)\n", employeeID,
+                            givenWeekDate.toString());
+                    try {
+                        resultUpdates += pstmt.executeUpdate();
+                        System.out.println("resultUpdates:"+resultUpdates);
+                    } catch (SQLException sqle) {
+                        System.err.println("DatabaseManager: Error deleting appointment");
+                        System.err.println("date="+givenWeekDate.toString() 
+                                + ";empl_id=" + employeeID);
+                        sqle.printStackTrace();
+                        throw sqle;
+                    }
                 }
-            }
 
+            }
+        } finally {
+            // After the writes, so nothing read in between stays cached
+            tenant.invalidateAvailability();
         }
 
         System.out.println("resultUpdates:"+resultUpdates);
@@ -6,6 +6,7 @@ import java.util.Date;
 import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
 import java.time.DayOfWeek;
+import java.sql.SQLException;
 
 import org.jabst.jabs.util.DateTableConversion;
 
@@ -15,18 +16,34 @@ public class Employee {
 	String name;
 	ArrayList<WeekDate> workingHours;
 	ArrayList<Date> appointmentHours;
+	/** The appointments from windowStart until windowEnd */
 	ArrayList<Appointment> appointments;
+	/** Start of the appointments loaded, or null if all of them are */
+	private Date windowStart;
+	/** Appointments from this time on are not loaded. Null if all are. */
+	private Date windowEnd;
+	/** The times taken by the loaded appointments, for finding overlaps */
+	private IntervalSet bookedTimes = new IntervalSet();
+	/** The business' database, for the appointments' durations and those
+	  * outside the window */
+	private DatabaseManager dbm;
 	Calendar startDate;
 	Timetable table;
 	public int hoursInADay = 8;
 	public static int startingHour = 9;
 
+	/** Creates an employee with all of their appointments loaded
+	  * @param dbm The business' database, which gives the appointments'
+	  * durations
+	  */
 	public Employee(long id, String name,
-		ArrayList<WeekDate> workingHours, ArrayList<Appointment> appointments) {
+		ArrayList<WeekDate> workingHours, ArrayList<Appointment> appointments,
+		DatabaseManager dbm) {
 		this.name = name;
 		this.id = id;
 		this.workingHours = workingHours;
 		this.appointments = appointments;
+		this.dbm = dbm;
 
 		if(workingHours.size() > 0) {
 			table = createTableFromWeekDates(workingHours);
@@ -35,22 +52,112 @@ public class Employee {
 		appointmentHours = new ArrayList<Date>();
 		for (Appointment apt : appointments) {
 			appointmentHours.add(apt.getDate());
+			bookedTimes.merge(apt.getDate().getTime(),
+				apt.getEndDate(dbm).getTime());
 		}
 	}
 
+	/** Creates an employee with only the appointments in a window of time
+	  * loaded. Appointments outside it are read from dbm on demand.
+	  * @param appointments The employee's appointments from windowStart
+	  * until windowEnd
+	  */
+	Employee(long id, String name,
+		ArrayList<WeekDate> workingHours, ArrayList<Appointment> appointments,
+		Date windowStart, Date windowEnd, DatabaseManager dbm) {
+		this(id, name, workingHours, appointments, dbm);
+		this.windowStart = windowStart;
+		this.windowEnd = windowEnd;
+	}
+
+	/** Gets the employee's appointments from the start of one date until the
+	  * start of another. Only goes to the database if the range is not all
+	  * within the loaded window.
+	  * @return The appointments in the range, in order of date and time
+	  * @throws SQLException If a database error occurs
+	  */
+	public ArrayList<Appointment> getAppointments(Date from, Date to)
+		throws SQLException
+	{
+		ArrayList<Appointment> inRange = new ArrayList<Appointment>();
+		boolean loaded = windowStart == null || (
+			!from.before(windowStart) && !to.after(windowEnd)
+		);
+		if (loaded) {
+			for (Appointment apt : appointments) {
+				Date date = apt.getDate();
+				if (!date.before(from) && date.before(to)) {
+					inRange.add(apt);
+				}
+			}
+		}
+		else {
+			dbm.getAppointments(from, to, id, inRange::add);
+		}
+		return inRange;
+	}
+
+	/** Checks whether any of the employee's appointments overlap the time
+	  * from start until end. Appointments that finish as it starts, or start
+	  * as it finishes, do not overlap it. Only goes to the database if some
+	  * appointment that could overlap it is not loaded.
+	  * @throws SQLException If a database error occurs
+	  */
+	public boolean isBookedDuring(final Date start, Date end)
+		throws SQLException
+	{
+		if (isLoadedAround(start, end)) {
+			return bookedTimes.overlaps(start.getTime(), end.getTime());
+		}
+		final boolean[] overlap = { false };
+		dbm.getAppointments(earliestOverlapping(start), end, id, apt -> {
+			if (apt.getEndDate(dbm).after(start)) {
+				overlap[0] = true;
+			}
+		});
+		return overlap[0];
+	}
+
+	/** @return Whether every appointment that could overlap the time from
+	  * start until end is loaded */
+	boolean isLoadedAround(Date start, Date end) {
+		return windowStart == null || (
+			!earliestOverlapping(start).before(windowStart)
+			&& !end.after(windowEnd)
+		);
+	}
+
+	/** @return The earliest an appointment still going at the time could
+	  * have started */
+	private Date earliestOverlapping(Date time) {
+		return new Date(time.getTime()
+			- dbm.getLongestAppointmentDuration().toMillis());
+	}
+
+	/** @return The start of the loaded appointments, or null if all of the
+	  * employee's appointments are loaded */
+	public Date getWindowStart() {
+		return windowStart;
+	}
+
+	/** @return The time the loaded appointments stop at, or null if all of
+	  * the employee's appointments are loaded */
+	public Date getWindowEnd() {
+		return windowEnd;
+	}
+
 	public void createWeekDatesFromTable() {
 		this.workingHours = new ArrayList<WeekDate>();//reset data
 
-		if(table.table.size() > 0) {//make sure there is data
+		if(table.days > 0) {//make sure there is data
 			// nested loops for nested arrays
-			for(int i = 0; i < table.table.size(); i++) {//days
-				for(int j = 0; j < table.table.get(i).size(); j++) {//hours
+			for(int i = 0; i < table.days; i++) {//days
+				for(int j = 0; j < table.hours; j++) {//hours
 
-					if(table.table.get(i).get(j) == Timetable.CellStatus.BOOKED_BY_YOU) {
+					if(table.get(i, j) == Timetable.CellStatus.BOOKED_BY_YOU) {
 						// create weekdate
-						WeekDate timeSlot = new WeekDate(DayOfWeek.of(i == 0 ? 7 : i), 0);//index starts at 1 for some reason
                         // Hour = cellIdx + startingHour
-						timeSlot.setTimeOfDayHour(j+startingHour);
+						WeekDate timeSlot = WeekDate.ofHour(DayOfWeek.of(i == 0 ? 7 : i), j+startingHour);//index starts at 1 for some reason
                         this.workingHours.add(timeSlot);
 					}
 				}
@@ -62,12 +169,12 @@ public class Employee {
 	public static ArrayList<Date> createDatesFromTable(Timetable table, Calendar startDate) {
 		ArrayList<Date> dates = new ArrayList<Date>();
 
-		if(table.table.size() > 0) {//make sure there is data
+		if(table.days > 0) {//make sure there is data
 			// nested loops for nested arrays
-			for(int i = 0; i < table.table.size(); i++) {//days
-				for(int j = 0; j < table.table.get(0).size(); j++) {//hours
+			for(int i = 0; i < table.days; i++) {//days
+				for(int j = 0; j < table.hours; j++) {//hours
 
-					if(table.table.get(i).get(j) == Timetable.CellStatus.BOOKED_BY_YOU) {
+					if(table.get(i, j) == Timetable.CellStatus.BOOKED_BY_YOU) {
 						// create date
 						Calendar timeSlot = (Calendar)startDate.clone();
 						timeSlot.add(Calendar.DAY_OF_YEAR, i);
@@ -83,7 +190,6 @@ public class Employee {
 	public Timetable createTableFromWeekDates(ArrayList<WeekDate> dates) {
 		table = new Timetable(true);
 		System.out.println("creating table from " + dates.size() + " shifts");
-		table.createBlankTables();
 
 		// fill tables
 		for(int i = 0; i < dates.size(); i++) {
@@ -91,12 +197,12 @@ public class Employee {
 			dayIdx = (dayIdx == 7 ? 0 : dayIdx);
 			int hourIdx = dates.get(i).getStartingHour() - startingHour;
 
-            if (hourIdx < 0) {
+            if (hourIdx < 0 || hourIdx >= table.hours) {
                 System.err.println("Discarding out of range "
                         +"WeekDate:"+dates.get(i));
                 continue;
             }
-			table.table.get(dayIdx).set(hourIdx, Timetable.CellStatus.BOOKED_BY_YOU);
+			table.set(dayIdx, hourIdx, Timetable.CellStatus.BOOKED_BY_YOU);
 		}
 		return table;
 	}
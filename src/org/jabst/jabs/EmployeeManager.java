@@ -1,18 +1,84 @@
 package org.jabst.jabs;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import java.sql.SQLException;
 
-import org.jabst.jabs.util.DayOfWeekConversion;
 import java.util.Calendar;
 
+import org.jabst.jabs.util.IntervalSet;
+import org.jabst.jabs.util.LruCache;
+import org.jabst.jabs.util.TimerWheel;
+
 public class EmployeeManager {
 	//Fields
-	ArrayList<Employee> employees = new ArrayList<Employee>();
+	/** How many employees are kept in memory after being loaded */
+	public static final int EMPLOYEE_CACHE_SIZE = 64;
+	/** How many weeks findNextAvailable looks through */
+	public static final int SEARCH_WEEKS = 4;
+	/** The employee ID of an appointment saveAppointment should choose the
+	  * employee for */
+	public static final long ANY_EMPLOYEE = DatabaseManager.ALL_EMPLOYEES;
+	/** How many employees saveAppointment tries for an appointment for any
+	  * employee before giving up, if the database turns the first ones down */
+	private static final int ASSIGN_ATTEMPTS = 3;
+	/** How long hold keeps a time if not told otherwise */
+	public static final Duration DEFAULT_HOLD_TIME = Duration.ofMinutes(5);
+	/** How late a hold may expire */
+	private static final long HOLD_TICK_MILLIS = 1000;
+	/** Holds expiring up to this many ticks ahead share no bucket */
+	private static final int HOLD_WHEEL_SIZE = 512;
+	/** Employees loaded from the database, by ID. Dropping the least
+	  * recently used one also drops it from idsByName. */
+	LruCache<Long, Employee> employees =
+		new LruCache<Long, Employee>(EMPLOYEE_CACHE_SIZE) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Employee> eldest) {
+				boolean evict = super.removeEldestEntry(eldest);
+				if (evict) {
+					forgetName(eldest.getKey());
+				}
+				return evict;
+			}
+		};
+	/** The IDs of the cached employees, by name */
+	private HashMap<String, Long> idsByName = new HashMap<String, Long>();
+	/** The name each cached employee is indexed under in idsByName */
+	private HashMap<Long, String> cachedNames = new HashMap<Long, String>();
+	/** The business the cached employees belong to */
+	private String cacheBusiness;
+	private long cacheHits;
+	private long cacheMisses;
 	private DatabaseManager dbm;
 	SessionManager session;
+	/** Available and booked headcounts for the week last checked.
+	  * Built on first use and kept up to date by the methods below. */
+	private SlotOccupancy occupancy;
+	/** The business occupancy was built for */
+	private String occupancyBusiness;
+	/** Chooses employees for appointments for any employee */
+	private AssignmentStrategy assignmentStrategy =
+		AssignmentStrategy.LEAST_LOADED;
+	/** Candidate heaps for occupancy's week, or null until needed */
+	private SlotAssigner assigner;
+	/** Expires holds. Advanced to now by expireHolds before anything that
+	  * depends on which times are free. */
+	private final TimerWheel<SlotHold> holdWheel = new TimerWheel<SlotHold>(
+		HOLD_TICK_MILLIS, HOLD_WHEEL_SIZE, System.currentTimeMillis());
+	/** The holds that are active */
+	private final HashSet<SlotHold> holds = new HashSet<SlotHold>();
+	/** The times each employee is held, by employee ID */
+	private final HashMap<Long, IntervalSet> heldTimes =
+		new HashMap<Long, IntervalSet>();
+	/** The business the holds are for */
+	private String holdBusiness;
 
 	
 	// Constructor
@@ -28,12 +94,17 @@ public class EmployeeManager {
 	  */
 	public Employee addEmployee() {
 		try {
-			long id = dbm.addEmployee("new Employee");
+			String name = "new Employee";
+			long id = dbm.addEmployee(name);
 			if(id == -1) {
 				System.out.println("EMPLOYEE MANAGER:\n\tEmployee not created");
 				return null;//can't create employee
 			}
-			return dbm.getEmployee(id);
+			// A new employee has no hours or appointments yet
+			Employee employee = new Employee(id, name,
+				new ArrayList<WeekDate>(), new ArrayList<Appointment>(), dbm);
+			cache(employee);
+			return employee;
 		} catch (SQLException sqle) {
 			System.out.println("EMPLOYEE MANAGER:\n\tError adding employee:\n");
 			sqle.printStackTrace();
@@ -47,9 +118,22 @@ public class EmployeeManager {
 	  */
 	public boolean updateEmployee(Employee employee) {
 		try {
-			return dbm.updateEmployee(employee);
+			if (!dbm.updateEmployee(employee)) {
+				// The object may no longer match the database
+				invalidate(employee.id);
+				return false;
+			}
+			// The object now matches the database, name and all
+			cache(employee);
+			if (isOccupancyCurrent()) {
+				occupancy.setAvailability(employee.id, employee.workingHours);
+				resetAssigner();
+			}
+			return true;
 		} catch (SQLException sqle) {
 			sqle.printStackTrace();//PLZ PRINT STACK TRACES
+			// The caller may have changed the cached object already
+			invalidate(employee.id);
 			return false;
 		}
 	}
@@ -72,15 +156,343 @@ public class EmployeeManager {
 		}
 	}
 
+	/** Saves the appointment if its employee is free for all of it.
+	  * If its employee ID is ANY_EMPLOYEE, the assignment strategy chooses
+	  * one of the employees free then, and the appointment's employee ID is
+	  * set to them if it is saved.
+	  * @return Whether the appointment was saved
+	  */
 	public boolean saveAppointment(Appointment apt) {
+		if (apt.getEmployeeID() == ANY_EMPLOYEE) {
+			return assignAppointment(apt);
+		}
 		try {
-			return dbm.saveAppointment(apt);
+			expireHolds();
+			if (isHeld(apt.getEmployeeID(), apt.getDate(), apt.getEndDate(dbm))) {
+				return false;
+			}
+			// Turn down clashes with loaded appointments without asking the
+			// database; it checks again in case they are out of date
+			checkCacheBusiness();
+			Employee cached = employees.get(apt.getEmployeeID());
+			if (cached != null
+				&& cached.isLoadedAround(apt.getDate(), apt.getEndDate(dbm))
+				&& cached.isBookedDuring(apt.getDate(), apt.getEndDate(dbm)))
+			{
+				return false;
+			}
+			if (!dbm.saveAppointment(apt)) {
+				return false;
+			}
+			// Its loaded appointments are now out of date
+			invalidate(apt.getEmployeeID());
+			if (isOccupancyCurrent()) {
+				occupancy.book(apt.getEmployeeID(), apt.getDate(),
+					apt.getEndDate(dbm));
+				if (assigner != null && assigner.occupancy == occupancy) {
+					assigner.booked(apt.getEmployeeID());
+				}
+			}
+			return true;
 		} catch (SQLException sqle) {
 			sqle.printStackTrace();//PLZ PRINT STACK TRACE
 			return false;
 		}
 	}
 	
+	/** Chooses the employee for an appointment for any employee with the
+	  * assignment strategy, and saves it with them. If the database turns
+	  * it down, they must have a booking we did not know about, so they are
+	  * marked booked and the next best employee is tried.
+	  */
+	private boolean assignAppointment(Appointment apt) {
+		try {
+			Date start = apt.getDate();
+			Date end = apt.getEndDate(dbm);
+			SlotAssigner slots = getAssigner(start);
+			for (int attempt = 0; attempt < ASSIGN_ATTEMPTS; ++attempt) {
+				long employeeID = slots.pick(start, end);
+				if (employeeID == -1) {
+					break;
+				}
+				apt.setEmployeeID(employeeID);
+				if (saveAppointment(apt)) {
+					slots.assigned(employeeID);
+					return true;
+				}
+				slots.occupancy.book(employeeID, start, end);
+				slots.booked(employeeID);
+			}
+			apt.setEmployeeID(ANY_EMPLOYEE);
+			return false;
+		} catch (SQLException sqle) {
+			sqle.printStackTrace();
+			apt.setEmployeeID(ANY_EMPLOYEE);
+			return false;
+		}
+	}
+
+	/** Makes a series of appointments one week apart
+	  * @param first The first appointment of the series
+	  * @param weeks How many appointments, including first
+	  * @return first, then copies of it at the same time of day on the same
+	  * day of each following week. Weeks are counted on the calendar, so the
+	  * time of day stays the same across daylight saving changes.
+	  */
+	public static ArrayList<Appointment> weeklySeries(Appointment first,
+		int weeks)
+	{
+		ArrayList<Appointment> series = new ArrayList<Appointment>(weeks);
+		Calendar cal = Calendar.getInstance();
+		for (int week = 0; week < weeks; ++week) {
+			if (week == 0) {
+				series.add(first);
+				continue;
+			}
+			cal.setTime(first.getDate());
+			cal.add(Calendar.WEEK_OF_YEAR, week);
+			series.add(new Appointment(cal.getTime(),
+				first.getAppointmentType(), first.getEmployeeID(),
+				first.getCustomer()));
+		}
+		return series;
+	}
+
+	/** Books the appointment's time every week for some weeks, with one
+	  * check and one transaction for the whole series. See weeklySeries
+	  * and saveAppointments.
+	  * If first's employee ID is ANY_EMPLOYEE, the assignment strategy
+	  * chooses an employee free for the first week, and every week is
+	  * booked with them.
+	  * @return Whether each week was saved, first week first, or null if
+	  * there was a database error
+	  */
+	public boolean[] saveWeeklySeries(Appointment first, int weeks) {
+		if (first.getEmployeeID() != ANY_EMPLOYEE) {
+			return saveAppointments(weeklySeries(first, weeks));
+		}
+		expireHolds();
+		try {
+			SlotAssigner slots = getAssigner(first.getDate());
+			long employeeID = slots.pick(first.getDate(), first.getEndDate(dbm));
+			if (employeeID == -1) {
+				return new boolean[weeks];
+			}
+			first.setEmployeeID(employeeID);
+			boolean[] saved = saveAppointments(weeklySeries(first, weeks));
+			if (saved != null && saved.length > 0 && saved[0]) {
+				slots.assigned(employeeID);
+			} else {
+				first.setEmployeeID(ANY_EMPLOYEE);
+			}
+			return saved;
+		} catch (SQLException sqle) {
+			sqle.printStackTrace();
+			return null;
+		}
+	}
+
+	/** Saves several appointments, such as a recurring series, as one
+	  * batch in one transaction. Each is checked against the appointments
+	  * already booked, the ones before it in the list, and the holds, in
+	  * one pass, so it takes about as long as saving one.
+	  * Appointments for ANY_EMPLOYEE are not saved; use saveAppointment.
+	  * @return Whether each appointment was saved, in the same order, or
+	  * null if there was a database error
+	  */
+	public boolean[] saveAppointments(List<Appointment> apts) {
+		expireHolds();
+		boolean[] saved = new boolean[apts.size()];
+		// Holds are only known here, so the database never sees held times
+		ArrayList<Appointment> unheld = new ArrayList<Appointment>(apts.size());
+		int[] positions = new int[apts.size()];
+		for (int i = 0; i < apts.size(); ++i) {
+			Appointment apt = apts.get(i);
+			if (apt.getEmployeeID() == ANY_EMPLOYEE
+				|| isHeld(apt.getEmployeeID(), apt.getDate(), apt.getEndDate(dbm)))
+			{
+				continue;
+			}
+			positions[unheld.size()] = i;
+			unheld.add(apt);
+		}
+		try {
+			boolean[] inserted = dbm.saveAppointments(unheld);
+			boolean current = isOccupancyCurrent();
+			for (int k = 0; k < unheld.size(); ++k) {
+				if (!inserted[k]) {
+					continue;
+				}
+				Appointment apt = unheld.get(k);
+				saved[positions[k]] = true;
+				// Its loaded appointments are now out of date
+				invalidate(apt.getEmployeeID());
+				if (current) {
+					occupancy.book(apt.getEmployeeID(), apt.getDate(),
+						apt.getEndDate(dbm));
+					if (assigner != null && assigner.occupancy == occupancy) {
+						assigner.booked(apt.getEmployeeID());
+					}
+				}
+			}
+			return saved;
+		} catch (SQLException sqle) {
+			sqle.printStackTrace();
+			return null;
+		}
+	}
+
+	/** Holds the appointment's time for DEFAULT_HOLD_TIME. See
+	  * hold(Appointment, Duration). */
+	public SlotHold hold(Appointment apt) {
+		return hold(apt, DEFAULT_HOLD_TIME);
+	}
+
+	/** Holds the appointment's time with its employee, so that it counts as
+	  * booked until the hold is confirmed or released, or ttl runs out.
+	  * Holds are only kept in memory; nothing is written to the database
+	  * until confirm. If the appointment's employee ID is ANY_EMPLOYEE, the
+	  * assignment strategy chooses the employee and it is set to them.
+	  * @param apt An unsaved appointment, all in one week
+	  * @param ttl How long the hold lasts if not confirmed
+	  * @return The hold, or null if the employee is not free for all of it,
+	  * or there was a database error
+	  */
+	public SlotHold hold(Appointment apt, Duration ttl) {
+		expireHolds();
+		Date start = apt.getDate();
+		Date end = apt.getEndDate(dbm);
+		try {
+			SlotOccupancy index = getOccupancy(start);
+			if (apt.getEmployeeID() == ANY_EMPLOYEE) {
+				SlotAssigner slots = getAssigner(start);
+				long employeeID = slots.pick(start, end);
+				if (employeeID == -1) {
+					return null;
+				}
+				slots.assigned(employeeID);
+				apt.setEmployeeID(employeeID);
+			} else if (!index.isFree(apt.getEmployeeID(), start, end)) {
+				return null;
+			}
+			SlotHold hold = new SlotHold(apt, end);
+			hold.timeout = holdWheel.schedule(hold,
+				System.currentTimeMillis() + ttl.toMillis());
+			holds.add(hold);
+			IntervalSet times = heldTimes.get(hold.getEmployeeID());
+			if (times == null) {
+				times = new IntervalSet();
+				heldTimes.put(hold.getEmployeeID(), times);
+			}
+			times.add(start.getTime(), end.getTime());
+			index.hold(hold.getEmployeeID(), start, end);
+			if (assigner != null && assigner.occupancy == index) {
+				assigner.booked(hold.getEmployeeID());
+			}
+			return hold;
+		} catch (SQLException sqle) {
+			sqle.printStackTrace();
+			return null;
+		}
+	}
+
+	/** Saves a held appointment into the database, ending the hold
+	  * @return Whether it was saved; false if the hold had already ended or
+	  * the database turned it down
+	  */
+	public boolean confirm(SlotHold hold) {
+		expireHolds();
+		return release(hold) && saveAppointment(hold.getAppointment());
+	}
+
+	/** Ends a hold without saving it, freeing its time
+	  * @return Whether it was active
+	  */
+	public boolean release(SlotHold hold) {
+		if (!holdWheel.cancel(hold.timeout)) {
+			return false;
+		}
+		forgetHold(hold);
+		return true;
+	}
+
+	/** Releases the holds that have run out, or every hold if we have
+	  * connected to another business since they were made. Expiry costs
+	  * nothing per hold until it is due; see TimerWheel.
+	  */
+	private void expireHolds() {
+		String business = dbm.getBusinessUsername();
+		if (!Objects.equals(business, holdBusiness)) {
+			for (SlotHold hold : holds) {
+				holdWheel.cancel(hold.timeout);
+			}
+			holds.clear();
+			heldTimes.clear();
+			holdBusiness = business;
+			return;
+		}
+		holdWheel.advance(System.currentTimeMillis(),
+			hold -> forgetHold(hold));
+	}
+
+	/** Frees the time of a hold that has been taken off the wheel */
+	private void forgetHold(SlotHold hold) {
+		holds.remove(hold);
+		long employeeID = hold.getEmployeeID();
+		IntervalSet times = heldTimes.get(employeeID);
+		if (times != null) {
+			times.remove(hold.getStart().getTime(), hold.getEnd().getTime());
+			if (times.isEmpty()) {
+				heldTimes.remove(employeeID);
+			}
+		}
+		if (isOccupancyCurrent()) {
+			occupancy.release(employeeID, hold.getStart(), hold.getEnd());
+			if (assigner != null && assigner.occupancy == occupancy) {
+				// They are free again in slots whose heaps dropped them
+				assigner.booked(employeeID);
+				assigner.reset();
+			}
+		}
+	}
+
+	/** @return Whether some of the time from start until end is held for
+	  * the employee */
+	private boolean isHeld(long employeeID, Date start, Date end) {
+		IntervalSet times = heldTimes.get(employeeID);
+		return times != null && times.overlaps(start.getTime(), end.getTime());
+	}
+
+	/** Sets how saveAppointment chooses the employee for appointments for
+	  * any employee. LEAST_LOADED until this is called.
+	  */
+	public void setAssignmentStrategy(AssignmentStrategy strategy) {
+		this.assignmentStrategy = Objects.requireNonNull(strategy);
+		// Ranks in the heaps were made by the old strategy
+		assigner = null;
+	}
+
+	public AssignmentStrategy getAssignmentStrategy() {
+		return assignmentStrategy;
+	}
+
+	/** Gets the candidate heaps for the week containing the date, starting
+	  * afresh if the occupancy index is rebuilt */
+	private SlotAssigner getAssigner(Date date) throws SQLException {
+		SlotOccupancy index = getOccupancy(date);
+		if (assigner == null || assigner.occupancy != index) {
+			assigner = new SlotAssigner(index, assignmentStrategy);
+		}
+		return assigner;
+	}
+
+	/** Makes the candidate heaps be rebuilt after availability changes */
+	private void resetAssigner() {
+		if (assigner != null) {
+			assigner.reset();
+		}
+	}
+
 	/** Creates a new employee object
 	 * 
 	 * @param employeeName : the name of the new employee
@@ -89,12 +501,12 @@ public class EmployeeManager {
 		//NYI
 	}
 
-	/** Adds employee objects to the ArrayList
-	 * Designed to accept input from the database
-	 * @param employee : The employee object to add
+	/** Loads the employee from the database into the cache, if it is not
+	 * already there
+	 * @param employeeID : The ID of the employee to load
 	 */
 	public void loadEmployee(int employeeID){
-		
+		getEmployee(employeeID);
 	}
 	
 	/** Asks the database for just this employee, and passes
@@ -109,7 +521,7 @@ public class EmployeeManager {
 				ArrayList<Appointment> appointments = dbm.getThisWeeksAppointments();
 				Employee emp = new Employee(
 					-1, "allEmployees", availability,
-					appointments
+					appointments, dbm
 				);
 				System.out.println("All Employees: \n" + availability.toString());
 				return emp;
@@ -120,8 +532,7 @@ public class EmployeeManager {
 			}
 		} else {
 			try {
-				System.out.println("getting Employee: " + employeeID);
-				return dbm.getEmployee(employeeID);
+				return getCachedEmployee(employeeID);
 			} catch (SQLException sqle) {
 				//stacktrace plz
 				System.out.println("EMPLOYEE MANAGER: can not get employee "+ employeeID);
@@ -131,6 +542,69 @@ public class EmployeeManager {
 		}
 	}
 
+	/** Gets the employee from the cache, or from the database if it is not
+	  * cached, in which case it is cached for next time
+	  */
+	private Employee getCachedEmployee(long employeeID) throws SQLException {
+		checkCacheBusiness();
+		Employee employee = employees.get(employeeID);
+		if (employee != null) {
+			++cacheHits;
+			return employee;
+		}
+		++cacheMisses;
+		System.out.println("getting Employee: " + employeeID);
+		employee = dbm.getEmployee(employeeID);
+		cache(employee);
+		return employee;
+	}
+
+	/** Adds the employee to the cache, replacing any older copy */
+	private void cache(Employee employee) {
+		checkCacheBusiness();
+		forgetName(employee.id);
+		employees.put(employee.id, employee);
+		idsByName.put(employee.name, employee.id);
+		cachedNames.put(employee.id, employee.name);
+	}
+
+	/** Drops the employee from the cache, so it is next read from the
+	  * database */
+	private void invalidate(long employeeID) {
+		employees.remove(employeeID);
+		forgetName(employeeID);
+	}
+
+	/** Removes the employee's entry from the name index */
+	private void forgetName(long employeeID) {
+		String name = cachedNames.remove(employeeID);
+		if (name != null && Objects.equals(idsByName.get(name), employeeID)) {
+			idsByName.remove(name);
+		}
+	}
+
+	/** Empties the cache if we have connected to another business since the
+	  * employees in it were loaded */
+	private void checkCacheBusiness() {
+		String business = dbm.getBusinessUsername();
+		if (!Objects.equals(business, cacheBusiness)) {
+			employees.clear();
+			idsByName.clear();
+			cachedNames.clear();
+			cacheBusiness = business;
+		}
+	}
+
+	/** @return How many employee lookups were answered from the cache */
+	public long getCacheHits() {
+		return cacheHits;
+	}
+
+	/** @return How many employee lookups had to go to the database */
+	public long getCacheMisses() {
+		return cacheMisses;
+	}
+
 	
 	/** Asks the database for just this employee, and passes
 	 *  it back to the caller
@@ -144,7 +618,7 @@ public class EmployeeManager {
 				ArrayList<Appointment> appointments = dbm.getThisWeeksAppointments();
 				Employee emp = new Employee(
 					-1, "allEmployees", availability,
-					dbm.getThisWeeksAppointments()
+					dbm.getThisWeeksAppointments(), dbm
 				);
 				System.out.println("All Employees: \n" + availability.toString());
 				return emp;
@@ -155,8 +629,7 @@ public class EmployeeManager {
 			}
 		} else {
 			try {
-				System.out.println("getting Employee: " + employeeID);
-				return dbm.getEmployee(employeeID);
+				return getCachedEmployee(employeeID);
 			} catch (SQLException sqle) {
 				return null;
 			}
@@ -166,13 +639,22 @@ public class EmployeeManager {
 	/** Returns the unique ID of an employee
 	 * 
 	 * @param employeeName : name of the employee
-	 * @return a long containing the unique ID of the employee or null
+	 * @return a long containing the unique ID of the employee or -1
 	 */
 	public long getEmployeeID(String employeeName){
-		for(int i = 0; i < employees.size(); i++){
-			if (employeeName.equals(employees.get(i).name)){
-				return employees.get(i).id;
-			}		
+		checkCacheBusiness();
+		Long id = idsByName.get(employeeName);
+		if (id != null) {
+			++cacheHits;
+			return id;
+		}
+		++cacheMisses;
+		// Names are listed as name+" #"+id
+		String prefix = employeeName + " #";
+		for (String nameID : getEmployeeNameIDs()) {
+			if (nameID.startsWith(prefix)) {
+				return Long.parseLong(nameID.substring(prefix.length()));
+			}
 		}
 		return -1;
 	}
@@ -183,7 +665,15 @@ public class EmployeeManager {
 	 */
 	public boolean deleteEmployee(Employee emp, boolean force){
 		try {
-			return dbm.deleteEmployee(emp, force);
+			if (!dbm.deleteEmployee(emp, force)) {
+				return false;
+			}
+			invalidate(emp.id);
+			if (isOccupancyCurrent()) {
+				occupancy.removeEmployee(emp.id);
+				resetAssigner();
+			}
+			return true;
 		} catch(SQLException sqle) {
 			System.out.println("EMPLOYEE MANAGER: \t\ncannot remove employee:");
 			sqle.printStackTrace();
@@ -191,96 +681,124 @@ public class EmployeeManager {
 		}
 	}
 	
-	/** Checks whether there is an employee who is free at the given Date
+	/** Checks whether there is an employee who is free at the given Date.
+	  * Only reads the database the first time a week or business is asked
+	  * about; after that this is a lookup in the occupancy index.
+	  * @param reqDate The date and time wanted. Any time within an hour
+	  * long slot gives the same answer.
 	  */
 	public boolean checkFreeEmployeeAt(Date reqDate) {
-		ArrayList<WeekDate> weekAvailability;
-		ArrayList<Appointment> weekAppointments;
+		expireHolds();
 		try {
-			weekAvailability =
-				dbm.getSevenDayEmployeeAvailability(false);
-			weekAppointments =
-				dbm.getThisWeeksAppointments();
+			return getOccupancy(reqDate).isFree(reqDate);
 		} catch (SQLException sqle) {
+			sqle.printStackTrace();
 			return false;
 		}
+	}
 
-		// Check if seven day availability has this date
-		// Generate the Date for all availability
-		boolean cont = false;
-		int availIdx;
-		for (availIdx = 0; availIdx < weekAvailability.size(); ++availIdx) {
-			Date queryDate =
-				DayOfWeekConversion.wd2cal(
-					weekAvailability.get(availIdx)
-				).getTime();
-			System.out.println("Compare converted date: "+queryDate);
-			if (queryDate.equals(reqDate)) {
-				cont = true;
-				break;
+	/** Finds the earliest times an appointment of the given type could be
+	  * booked, and with which employee, in the week containing after and
+	  * the SEARCH_WEEKS - 1 weeks following it.
+	  * Reads every employee's availability and the appointments in those
+	  * weeks once, then merges the employees' free slots in time order
+	  * until count are found.
+	  * @param appointmentType The type of appointment wanted
+	  * @param after Slots starting before this are skipped
+	  * @param count How many slots to find
+	  * @return Up to count unsaved Appointments with no customer yet,
+	  * earliest first, or null if there was a database error
+	  */
+	public ArrayList<Appointment> findNextAvailable(int appointmentType,
+		Date after, int count)
+	{
+		expireHolds();
+		try {
+			AppointmentType type = dbm.getAppointmentType(appointmentType);
+			Duration duration = type == null ?
+				AppointmentType.DEFAULT_DURATION : type.getDuration();
+			SlotSearch search = new SlotSearch(
+				SlotOccupancy.weekStartOf(after), SEARCH_WEEKS);
+			// Include appointments that started earlier and are still going
+			Date from = new Date(after.getTime()
+				- dbm.getLongestAppointmentDuration().toMillis());
+			dbm.getAppointments(from, search.getEnd(),
+				DatabaseManager.ALL_EMPLOYEES,
+				apt -> search.book(apt.getEmployeeID(), apt.getDate(),
+					apt.getEndDate(dbm)));
+			for (SlotHold hold : holds) {
+				search.book(hold.getEmployeeID(), hold.getStart(),
+					hold.getEnd());
 			}
+			return search.find(dbm.getAvailabilityByEmployee(), after,
+				count, appointmentType, duration);
+		} catch (SQLException sqle) {
+			sqle.printStackTrace();
+			return null;
 		}
-		// Quit if weekAvailability contains no matching date
-		if (!cont) return false;
-		
-		// Count how many employees are free at reqDate
-		int freeEmpCount;
-		for (freeEmpCount = 0; availIdx < weekAvailability.size();
-			++availIdx, ++freeEmpCount)
-		{
-			if (DayOfWeekConversion.wd2cal(
-					weekAvailability.get(availIdx)
-				).getTime().equals(reqDate))
-			{
-				continue;
-			} else break;
-		}
-		
-		// Count how many appointments are occuring at reqDate
-		// FIXME: THIS IS STARTING FROM THE START OF APPOINTMENTS
-		// AND BREAKING IMMEDIATELY. FIRST PARSE FROM THE START OF THE ARRAY
-		// UNTIL WE FIND IT, THEN BREAK WHEN WE ARE DONE
-		
-		// Find the array index of the first appointment
-		int aptCount = 0;
-		int aptIdx;
-		for (aptIdx = 0; aptIdx < weekAppointments.size(); ++aptIdx) {
-			// Get the date
-			Date aptDate = weekAppointments.get(aptIdx).getDate();
-			System.out.println("aptDate="+aptDate);
-			System.out.println("reqDate="+reqDate);
-			if (aptDate.equals(reqDate)) {
-				++aptCount;
-				break;
-			} else continue;
-		}
-		
-		// Starting from the second appointment, keep adding until
-		// we reach something else or end of array
-		for (++aptIdx; aptIdx < weekAppointments.size(); ++aptIdx) {
-			// Get the date
-			Date aptDate = weekAppointments.get(aptIdx).getDate();
-			System.out.println("aptDate="+aptDate);
-			System.out.println("reqDate="+reqDate);
-			if (aptDate.equals(reqDate)) {
-				++aptCount;
-				continue;
-			} else break;
-		}
-		
-		// If there are more availabilities than appointments occuring, the
-		// time slot must be bookable (but we don't know who the employee
-		// will be)
-		System.out.println("freeEmpCount="+freeEmpCount);
-		System.out.println("aptCount="+aptCount);
-		if (freeEmpCount - aptCount > 0) {
-			System.out.println("Yea");
-			return true;
-		} else {
-			System.out.println("Nay");
+	}
+
+	/** Checks whether there is an employee free for the whole of an
+	  * appointment of the given type starting at the given Date
+	  * @param reqDate The date and time wanted
+	  * @param appointmentType The type of appointment, which sets how many
+	  * hour long slots it takes
+	  */
+	public boolean checkFreeEmployeeAt(Date reqDate, int appointmentType) {
+		expireHolds();
+		try {
+			AppointmentType type = dbm.getAppointmentType(appointmentType);
+			Duration duration = type == null ?
+				AppointmentType.DEFAULT_DURATION : type.getDuration();
+			Date end = new Date(reqDate.getTime() + duration.toMillis());
+			return getOccupancy(reqDate).isFree(reqDate, end);
+		} catch (SQLException sqle) {
+			sqle.printStackTrace();
 			return false;
 		}
 	}
+
+	/** Whether occupancy is for the business we are connected to */
+	private boolean isOccupancyCurrent() {
+		return occupancy != null
+			&& Objects.equals(occupancyBusiness, dbm.getBusinessUsername());
+	}
+
+	/** Gets the occupancy index for the week containing the date, building
+	  * it from the database if the current one is for another week or
+	  * business.
+	  */
+	private SlotOccupancy getOccupancy(Date date) throws SQLException {
+		if (isOccupancyCurrent() && occupancy.covers(date)) {
+			return occupancy;
+		}
+
+		Date weekStart = SlotOccupancy.weekStartOf(date);
+		Calendar weekEnd = Calendar.getInstance();
+		weekEnd.setTime(weekStart);
+		weekEnd.add(Calendar.DAY_OF_MONTH, 7);
+
+		SlotOccupancy index = new SlotOccupancy(weekStart);
+		for (Map.Entry<Long, ArrayList<WeekDate>> entry
+			: dbm.getAvailabilityByEmployee().entrySet())
+		{
+			index.setAvailability(entry.getKey(), entry.getValue());
+		}
+		// Include appointments from last week still going into this one
+		Date from = new Date(weekStart.getTime()
+			- dbm.getLongestAppointmentDuration().toMillis());
+		dbm.getAppointments(from, weekEnd.getTime(),
+			DatabaseManager.ALL_EMPLOYEES,
+			apt -> index.book(apt.getEmployeeID(), apt.getDate(),
+				apt.getEndDate(dbm)));
+		for (SlotHold hold : holds) {
+			index.hold(hold.getEmployeeID(), hold.getStart(), hold.getEnd());
+		}
+
+		occupancy = index;
+		occupancyBusiness = dbm.getBusinessUsername();
+		return occupancy;
+	}
 	
 	/** Updates the workingHours attribute of the employee
 	 * 
@@ -288,10 +806,9 @@ public class EmployeeManager {
 	 * @param workingHours : takes an ArrayList with new workingHours
 	 */
 	public void setWorkingHours(long employeeID, ArrayList<WeekDate> workingHours){
-		for(int i = 0; i < employees.size(); i++){
-			if(employeeID == employees.get(i).id){
-				employees.get(i).setWorkingHours(workingHours);
-			}
+		Employee employee = getEmployee(employeeID);
+		if (employee != null) {
+			employee.setWorkingHours(workingHours);
 		}
 	}
 	
@@ -301,12 +818,8 @@ public class EmployeeManager {
 	 * @return an ArrayList<Date> of current workingHours
 	 */
 	public ArrayList<WeekDate> getWorkingHours(long employeeID){
-		for(int i = 0; i < employees.size(); i++){
-			if(employeeID == employees.get(i).id){
-				return (employees.get(i).workingHours);
-			}
-		}
-		return null;
+		Employee employee = getEmployee(employeeID);
+		return employee == null ? null : employee.workingHours;
 	}
 	
 	public ArrayList<String> getEmployeeNameIDs() {
@@ -1,6 +1,9 @@
 package org.jabst.jabs;
 
 
+import java.util.function.BiConsumer;
+
+import javafx.application.Platform;//runs code on the JavaFX thread
 import javafx.event.ActionEvent;//type of event
 import javafx.event.EventHandler;//this activates when a button is pressed
 import javafx.scene.Scene;//area inside stage
@@ -42,24 +45,47 @@ public class LoginGUI {
 			// handle method is called when the button is pressed
 			@Override
 			public void handle(ActionEvent event) {
-
-				System.out.println(tfUName.getText());
-				System.out.println(tfPWord.getText());
-				// check username and password
-
-
-				if(session.loginUser(tfUName.getText(), tfPWord.getText())) {
-					// StageCoordinate sc = new StageCoordinate(window);
-					info.username = tfUName.getText();
-					info.password = tfPWord.getText();
-					info.button = LoginInfo.Buttons.LOGIN;
-					window.close();//close the window
-				} else {
-					tfUName.setText("");
-					tfPWord.setText("");
-					tfUName.setStyle(redBorder);
-					tfPWord.setStyle(redBorder);
-				}
+				final String username = tfUName.getText();
+				final String password = tfPWord.getText();
+				System.out.println(username);
+
+				// check username and password on the login threads, so the
+				// window keeps responding while the password is hashed
+				bLogin.setDisable(true);
+				session.authenticateAsync(username, password).whenComplete(
+					new BiConsumer<UserType, Throwable>() {
+						@Override
+						public void accept(UserType userType, Throwable error) {
+							Platform.runLater(new Runnable() {
+								@Override
+								public void run() {
+									bLogin.setDisable(false);
+									if (!window.isShowing()) {
+										return; // closed while checking
+									}
+									if (error == null
+										&& userType != UserType.NON_EXISTANT)
+									{
+										// StageCoordinate sc = new StageCoordinate(window);
+										info.userType = userType;
+										info.username = username;
+										info.password = password;
+										info.button = LoginInfo.Buttons.LOGIN;
+										window.close();//close the window
+									} else {
+										if (error != null) {
+											error.printStackTrace();
+										}
+										tfUName.setText("");
+										tfPWord.setText("");
+										tfUName.setStyle(redBorder);
+										tfPWord.setStyle(redBorder);
+									}
+								}
+							});
+						}
+					}
+				);
 			}
 		});
 		
@@ -4,6 +4,8 @@ public class LoginInfo {
 
 	public static String username;
 	public static String password;
+	/** The type of the user who logged in, set with button LOGIN */
+	public static UserType userType;
 
 	public static enum Buttons {
 		LOGIN, REGISTER, CLOSE
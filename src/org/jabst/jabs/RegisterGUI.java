@@ -43,6 +43,9 @@ public class RegisterGUI {
 		TextField tfPhone = new TextField();
 
 		TextField tfUName = new TextField();
+		Label lUNameTaken = new Label("Username taken");
+		lUNameTaken.setVisible(false);
+		lUNameTaken.setManaged(false);
 		PasswordField tfPWord = new PasswordField();
 		PasswordField tfPWord2 = new PasswordField();
 
@@ -151,10 +154,15 @@ public class RegisterGUI {
 			public void handle(KeyEvent event) {
 				// Character restrictions
 				System.out.println("key pressed in username text field");
+				boolean valid = session.validateUsernameInput(tfUName.getText());
+				// Only look up usernames that could be registered
+				boolean taken = valid && session.isUsernameTaken(tfUName.getText());
 				tfUName.setStyle (
-						session.validateUsernameInput(tfUName.getText())
+						valid && !taken
 						? "" : redBorder
 				);
+				lUNameTaken.setVisible(taken);
+				lUNameTaken.setManaged(taken);
 			}
 		});
 
@@ -217,7 +225,7 @@ public class RegisterGUI {
 
 		//add elements to the layout
 		buttons.getChildren().addAll(bRegister, bLogin);
-		root.getChildren().addAll(cbBusinessSelect, lName, tfName, lAddress, tfAddress, lPhone, tfPhone, lUName, tfUName, lPWord, tfPWord, lPWord2, tfPWord2, buttons);
+		root.getChildren().addAll(cbBusinessSelect, lName, tfName, lAddress, tfAddress, lPhone, tfPhone, lUName, tfUName, lUNameTaken, lPWord, tfPWord, lPWord2, tfPWord2, buttons);
 
 		Scene scene = new Scene(root/*, 300, 200*/);//create area inside window
 /*
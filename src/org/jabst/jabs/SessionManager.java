@@ -4,6 +4,7 @@ import javafx.application.Application;
 import javafx.stage.Stage;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.concurrent.CompletableFuture;
 import org.hsqldb.HsqlException;
 
 import java.util.logging.Logger;
@@ -42,28 +43,21 @@ public class SessionManager extends Application {
 						// Open business menu for business,
 						// customer menu for customer
 						
-						try {
-							UserType userType = dbm.getUserType(username);
-							if (userType == UserType.NON_EXISTANT) {
-								// Loop around
-								// TODO: Feedback
-								currentWindow = Window.LOGIN;
-							}
-							else if (userType == UserType.CUSTOMER) {
-								currentWindow = Window.CUSTOMERMENU;
-							}
-							else if (userType == UserType.BUSINESS) {
-								currentWindow = Window.BUSINESSMENU;
-							}
-							else if (userType == UserType.SUPERUSER) {
-								currentWindow = Window.SUPERUSERMENU;
-							}
-							
-						} catch (SQLException sqle) {
-							// TODO: Handle updating interface to show database error
-							sqle.printStackTrace();
+						UserType userType = lInfo.userType;
+						if (userType == UserType.NON_EXISTANT) {
+							// Loop around
+							// TODO: Feedback
 							currentWindow = Window.LOGIN;
 						}
+						else if (userType == UserType.CUSTOMER) {
+							currentWindow = Window.CUSTOMERMENU;
+						}
+						else if (userType == UserType.BUSINESS) {
+							currentWindow = Window.BUSINESSMENU;
+						}
+						else if (userType == UserType.SUPERUSER) {
+							currentWindow = Window.SUPERUSERMENU;
+						}
 					}
 					else if(lInfo.button == LoginInfo.Buttons.REGISTER) {
 						// open register window
@@ -216,6 +210,35 @@ public class SessionManager extends Application {
 		}
 	}
 
+	/**
+	 * Checks user login input against the Database and finds the user's type
+	 * in the same query
+	 * @param username : Username to query
+	 * @param password : password to query
+	 * @return : the type of the user, or NON_EXISTANT if the login failed
+	 */
+	public UserType authenticate(String username, String password){
+		try {
+			return dbm.authenticate(username, password);
+		} catch (SQLException sqle) {
+			return UserType.NON_EXISTANT;
+		}
+	}
+
+	/**
+	 * Checks user login input against the Database on the login threads,
+	 * so the password hash does not hold up the JavaFX thread
+	 * @param username : Username to query
+	 * @param password : password to query
+	 * @return : the type of the user once checked, or NON_EXISTANT if the
+	 * login failed. Completes exceptionally on a database error.
+	 */
+	public CompletableFuture<UserType> authenticateAsync(String username,
+		String password)
+	{
+		return dbm.authenticateAsync(username, password);
+	}
+
 	/**
 	 * Attempts to add a new dataset to the Database
 	 * @param username : String, unique user data to be added
@@ -308,6 +331,22 @@ public class SessionManager extends Application {
 		return valid;
 	}
 
+	/**
+	 * Checks whether a username is already in use, quickly enough to call
+	 * as the user types
+	 * @param username : String, user input
+	 * @return : whether the username is taken. false if the database could
+	 * not be asked; registering will catch it then.
+	 */
+	public boolean isUsernameTaken(String username){
+		try {
+			return dbm.isUsernameTaken(username);
+		} catch (SQLException sqle) {
+			sqle.printStackTrace();
+			return false;
+		}
+	}
+
 	/**
 	 * Validates the user input for the Password value
 	 * @param input : String, user input
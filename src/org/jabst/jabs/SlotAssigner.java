@@ -0,0 +1,177 @@
+package org.jabst.jabs;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/** Picks the employee for an appointment that asks for any employee, in
+  * the week of a SlotOccupancy, using an AssignmentStrategy.
+  * Each slot has a heap of the employees free in it, lowest rank first,
+  * built the first time the slot is asked about. Booking or assigning an
+  * employee changes their rank, so rather than updating every heap they are
+  * in, each employee has a version that goes up when their rank may have
+  * changed; heap entries made at an older version are re-ranked when they
+  * reach the top. Entries for employees no longer free in the slot are
+  * dropped then too. So picking an employee takes O(log n) for n employees,
+  * plus a little for each stale entry, and never reads the database.
+  * Only the head of the first slot's heap is chosen from; employees free
+  * then but not for the whole appointment are set aside and put back.
+  */
+class SlotAssigner implements AssignmentStrategy.Stats {
+    /** Lowest rank first, then lowest employee ID */
+    private static final Comparator<Candidate> BY_RANK =
+        new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                int byRank = Long.compare(a.rank, b.rank);
+                return byRank != 0 ?
+                    byRank : Long.compare(a.employeeID, b.employeeID);
+            }
+        };
+
+    /** An employee in a slot's heap, ranked as they were at version */
+    private static class Candidate {
+        final long employeeID;
+        final long rank;
+        final int version;
+
+        Candidate(long employeeID, long rank, int version) {
+            this.employeeID = employeeID;
+            this.rank = rank;
+            this.version = version;
+        }
+    }
+
+    /** The load and turn of an employee this week */
+    private static class EmployeeState {
+        int load;
+        long lastAssigned;
+        int version;
+    }
+
+    final SlotOccupancy occupancy;
+    private final AssignmentStrategy strategy;
+    /** The candidates for each slot, or null if not built yet */
+    private final ArrayList<PriorityQueue<Candidate>> heaps;
+    private final HashMap<Long, EmployeeState> states =
+        new HashMap<Long, EmployeeState>();
+    /** How many appointments have been assigned, for round robin turns */
+    private long assignments;
+
+    SlotAssigner(SlotOccupancy occupancy, AssignmentStrategy strategy) {
+        this.occupancy = occupancy;
+        this.strategy = strategy;
+        this.heaps = new ArrayList<PriorityQueue<Candidate>>(
+            SlotOccupancy.SLOTS);
+        for (int slot = 0; slot < SlotOccupancy.SLOTS; ++slot) {
+            heaps.add(null);
+        }
+    }
+
+    /** Chooses the employee for an appointment from start until end. The
+      * choice is not recorded until assigned is called.
+      * @return The ID of the best ranked employee available and not booked
+      * for all of it, or -1 if there is none or it is not all in this week
+      */
+    long pick(Date start, Date end) {
+        int first = occupancy.slotOf(start.getTime());
+        int last = occupancy.slotOf(Math.max(start.getTime(), end.getTime() - 1));
+        if (first == -1 || last == -1) {
+            return -1;
+        }
+        PriorityQueue<Candidate> heap = heap(first);
+        ArrayList<Candidate> setAside = new ArrayList<Candidate>();
+        long chosen = -1;
+        while (!heap.isEmpty()) {
+            Candidate top = heap.poll();
+            if (!occupancy.isFree(top.employeeID, first, first)) {
+                // Booked or no longer working then; reset brings them back
+                // if that changes
+                continue;
+            }
+            EmployeeState state = state(top.employeeID);
+            if (top.version != state.version) {
+                heap.add(candidate(top.employeeID, state));
+                continue;
+            }
+            setAside.add(top);
+            if (occupancy.isFree(top.employeeID, first, last)) {
+                chosen = top.employeeID;
+                break;
+            }
+        }
+        heap.addAll(setAside);
+        return chosen;
+    }
+
+    /** Records that the employee was booked for an appointment this week,
+      * however they were chosen */
+    void booked(long employeeID) {
+        EmployeeState state = state(employeeID);
+        state.load = occupancy.getBookedSlots(employeeID);
+        ++state.version;
+    }
+
+    /** Records that pick's choice was booked */
+    void assigned(long employeeID) {
+        EmployeeState state = state(employeeID);
+        state.lastAssigned = ++assignments;
+        ++state.version;
+    }
+
+    /** Drops every heap, to be rebuilt when next asked about. Called when
+      * availability changes or a booking is released, which can make an
+      * employee free in slots whose heaps no longer hold them. */
+    void reset() {
+        for (int slot = 0; slot < SlotOccupancy.SLOTS; ++slot) {
+            heaps.set(slot, null);
+        }
+    }
+
+    @Override
+    public int getLoad(long employeeID) {
+        return state(employeeID).load;
+    }
+
+    @Override
+    public long getLastAssigned(long employeeID) {
+        return state(employeeID).lastAssigned;
+    }
+
+    /** @return The slot's heap, built from the occupancy if need be */
+    private PriorityQueue<Candidate> heap(int slot) {
+        PriorityQueue<Candidate> heap = heaps.get(slot);
+        if (heap == null) {
+            final PriorityQueue<Candidate> built =
+                new PriorityQueue<Candidate>(11, BY_RANK);
+            final int s = slot;
+            occupancy.forEachAvailable(slot, id -> {
+                if (occupancy.isFree(id, s, s)) {
+                    built.add(candidate(id, state(id)));
+                }
+            });
+            heaps.set(slot, built);
+            heap = built;
+        }
+        return heap;
+    }
+
+    private Candidate candidate(long employeeID, EmployeeState state) {
+        return new Candidate(employeeID,
+            strategy.rank(employeeID, this), state.version);
+    }
+
+    /** @return The employee's state, starting from their bookings in the
+      * occupancy the first time they are seen */
+    private EmployeeState state(long employeeID) {
+        EmployeeState state = states.get(employeeID);
+        if (state == null) {
+            state = new EmployeeState();
+            state.load = occupancy.getBookedSlots(employeeID);
+            states.put(employeeID, state);
+        }
+        return state;
+    }
+}
@@ -0,0 +1,55 @@
+package org.jabst.jabs;
+
+import java.util.Date;
+
+import org.jabst.jabs.util.TimerWheel;
+
+/** A provisional booking of an appointment's time with one employee, kept
+  * in memory by EmployeeManager. While it is held the time counts as booked,
+  * so nobody else is offered it. It lasts until it is confirmed into the
+  * database, released, or it expires.
+  * See EmployeeManager.hold.
+  */
+public class SlotHold {
+	/** The appointment held, with its employee chosen */
+	private final Appointment appointment;
+	/** The time held, fixed when it was made */
+	private final Date start;
+	private final Date end;
+	/** Its entry on EmployeeManager's expiry wheel */
+	TimerWheel<SlotHold>.Timeout timeout;
+
+	SlotHold(Appointment appointment, Date end) {
+		this.appointment = appointment;
+		this.start = appointment.getDate();
+		this.end = end;
+	}
+
+	public Appointment getAppointment() {
+		return appointment;
+	}
+
+	public long getEmployeeID() {
+		return appointment.getEmployeeID();
+	}
+
+	public Date getStart() {
+		return start;
+	}
+
+	public Date getEnd() {
+		return end;
+	}
+
+	/** @return When the hold expires if not confirmed */
+	public Date getExpiry() {
+		return new Date(timeout.getDeadline());
+	}
+
+	/** @return Whether it still holds its time: it has not been confirmed,
+	  * released or expired. Expiry is only noticed when EmployeeManager is
+	  * next used. */
+	public boolean isActive() {
+		return timeout.isActive();
+	}
+}
@@ -0,0 +1,327 @@
+package org.jabst.jabs;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/** How many employees are available and how many of those are booked in
+  * each hour long slot of one week, from midnight Sunday to midnight the
+  * next Sunday. Kept up to date as bookings and availability change, so
+  * that asking whether a slot is free needs no database access.
+  * Only bookings by an employee who is available in a slot count towards
+  * that slot being booked. An appointment books every slot it overlaps.
+  * Holds count as bookings, but are kept apart from appointments so that
+  * releasing one leaves the appointments in its slots booked.
+  */
+class SlotOccupancy {
+    public static final int HOURS_PER_DAY = 24;
+    /** One slot for every hour of the week */
+    public static final int SLOTS = 7 * HOURS_PER_DAY;
+    private static final long MILLIS_PER_HOUR = 3600000L;
+
+    /** The time each slot starts at, plus the end of the week at SLOTS.
+      * Hours are counted on the calendar, so a slot on a daylight saving
+      * day still starts at the hour its WeekDate says.
+      */
+    private final long[] slotStart = new long[SLOTS + 1];
+    /** How many employees are available in each slot */
+    private final int[] available = new int[SLOTS];
+    /** How many available employees are booked in each slot */
+    private final int[] booked = new int[SLOTS];
+    /** The slots each employee is available in, by employee ID */
+    private final HashMap<Long, BitSet> availability =
+        new HashMap<Long, BitSet>();
+    /** The slots each employee has an appointment in, by employee ID */
+    private final HashMap<Long, BitSet> bookings =
+        new HashMap<Long, BitSet>();
+    /** The slots each employee is held in, by employee ID */
+    private final HashMap<Long, BitSet> holds = new HashMap<Long, BitSet>();
+
+    /** Creates an index with no availability or bookings
+      * @param weekStart Midnight at the start of the Sunday the week begins
+      * on. See weekStartOf.
+      */
+    SlotOccupancy(Date weekStart) {
+        fillSlotStarts(weekStart, 1, slotStart);
+    }
+
+    /** Works out when each slot of some weeks starts
+      * @param weekStart Midnight at the start of the first week's Sunday
+      * @param weeks How many weeks to fill in
+      * @param starts Receives the start of each slot, week after week, then
+      * the end of the last week. Must hold weeks * SLOTS + 1.
+      */
+    static void fillSlotStarts(Date weekStart, int weeks, long[] starts) {
+        Calendar cal = Calendar.getInstance();
+        for (int day = 0; day < 7 * weeks; ++day) {
+            for (int hour = 0; hour < HOURS_PER_DAY; ++hour) {
+                cal.setTime(weekStart);
+                cal.add(Calendar.DAY_OF_MONTH, day);
+                cal.set(Calendar.HOUR_OF_DAY, hour);
+                starts[day * HOURS_PER_DAY + hour] = cal.getTimeInMillis();
+            }
+        }
+        cal.setTime(weekStart);
+        cal.add(Calendar.DAY_OF_MONTH, 7 * weeks);
+        starts[weeks * SLOTS] = cal.getTimeInMillis();
+    }
+
+    /** @return Midnight at the start of the Sunday of the week the date is
+      * in */
+    static Date weekStartOf(Date date) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.add(Calendar.DAY_OF_MONTH,
+            Calendar.SUNDAY - cal.get(Calendar.DAY_OF_WEEK));
+        return cal.getTime();
+    }
+
+    /** @return Whether the date falls in the week this index is for */
+    boolean covers(Date date) {
+        return slotOf(date.getTime()) != -1;
+    }
+
+    /** @return Whether an available employee has no appointment in the slot
+      * containing the date. False if the date is not in this week.
+      */
+    boolean isFree(Date date) {
+        int slot = slotOf(date.getTime());
+        return slot != -1 && available[slot] > booked[slot];
+    }
+
+    /** @return How many employees are available in the slot containing the
+      * date, or 0 if it is not in this week */
+    int getAvailable(Date date) {
+        int slot = slotOf(date.getTime());
+        return slot == -1 ? 0 : available[slot];
+    }
+
+    /** @return How many available employees are booked in the slot
+      * containing the date, or 0 if it is not in this week */
+    int getBooked(Date date) {
+        int slot = slotOf(date.getTime());
+        return slot == -1 ? 0 : booked[slot];
+    }
+
+    /** @return Whether the employee is available in, and has no appointment
+      * or hold in, every slot from first to last inclusive */
+    boolean isFree(long employeeID, int first, int last) {
+        BitSet avail = availability.get(employeeID);
+        return avail != null && avail.nextClearBit(first) > last
+            && noneSet(bookings.get(employeeID), first, last)
+            && noneSet(holds.get(employeeID), first, last);
+    }
+
+    /** @return Whether the employee is available in, and has no appointment
+      * or hold in, every slot the time from start until end overlaps.
+      * False if any of it is not in this week.
+      */
+    boolean isFree(long employeeID, Date start, Date end) {
+        int first = slotOf(start.getTime());
+        int last = slotOf(end.getTime() - 1);
+        return first != -1 && last >= first && isFree(employeeID, first, last);
+    }
+
+    /** Calls action with the ID of every employee available in the slot */
+    void forEachAvailable(int slot, LongConsumer action) {
+        for (Map.Entry<Long, BitSet> entry : availability.entrySet()) {
+            if (entry.getValue().get(slot)) {
+                action.accept(entry.getKey());
+            }
+        }
+    }
+
+    /** @return How many slots of this week the employee is booked or held
+      * in */
+    int getBookedSlots(long employeeID) {
+        BitSet booking = bookings.get(employeeID);
+        BitSet held = holds.get(employeeID);
+        if (held == null) {
+            return booking == null ? 0 : booking.cardinality();
+        }
+        BitSet taken = (BitSet)held.clone();
+        if (booking != null) {
+            taken.or(booking);
+        }
+        return taken.cardinality();
+    }
+
+    /** Replaces the slots the employee is available in
+      * @param hours The employee's whole availability. Each WeekDate
+      * makes the employee available for the hour it starts in.
+      */
+    void setAvailability(long employeeID, Collection<WeekDate> hours) {
+        BitSet slots = new BitSet(SLOTS);
+        for (WeekDate wd : hours) {
+            slots.set(slotOf(wd));
+        }
+        setAvailability(employeeID, slots);
+    }
+
+    /** @return Whether some employee is available in, and has no
+      * appointment in, every slot the time from start until end overlaps.
+      * False if any of it is not in this week.
+      */
+    boolean isFree(Date start, Date end) {
+        int first = slotOf(start.getTime());
+        int last = slotOf(end.getTime() - 1);
+        if (first == -1 || last == -1 || last < first) {
+            return false;
+        }
+        for (int slot = first; slot <= last; ++slot) {
+            if (available[slot] <= booked[slot]) {
+                return false;
+            }
+        }
+        // Every slot has someone free; look for one person free in all
+        for (long employeeID : availability.keySet()) {
+            if (isFree(employeeID, first, last)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Records that the employee has an appointment from start until end,
+      * booking every slot it overlaps. Parts not in this week are ignored.
+      */
+    void book(long employeeID, Date start, Date end) {
+        long from = Math.max(start.getTime(), slotStart[0]);
+        int slot = slotOf(from);
+        if (slot == -1 || end.getTime() <= from) {
+            return;
+        }
+        BitSet booking = bookings.get(employeeID);
+        if (booking == null) {
+            booking = new BitSet(SLOTS);
+            bookings.put(employeeID, booking);
+        }
+        BitSet avail = availability.get(employeeID);
+        BitSet held = holds.get(employeeID);
+        for (; slot < SLOTS && slotStart[slot] < end.getTime(); ++slot) {
+            if (booking.get(slot)) {
+                continue;
+            }
+            booking.set(slot);
+            if (avail != null && avail.get(slot)
+                && (held == null || !held.get(slot)))
+            {
+                ++booked[slot];
+            }
+        }
+    }
+
+    /** Holds every slot the time from start until end overlaps for the
+      * employee, so they count as booked until release is called. Parts
+      * not in this week are ignored. An employee's holds must not share
+      * slots, which holding only free slots ensures.
+      */
+    void hold(long employeeID, Date start, Date end) {
+        setHeld(employeeID, start, end, true);
+    }
+
+    /** Undoes hold for the same times */
+    void release(long employeeID, Date start, Date end) {
+        setHeld(employeeID, start, end, false);
+    }
+
+    /** Forgets the employee's availability, bookings and holds */
+    void removeEmployee(long employeeID) {
+        setAvailability(employeeID, new BitSet(SLOTS));
+        availability.remove(employeeID);
+        bookings.remove(employeeID);
+        holds.remove(employeeID);
+    }
+
+    private void setHeld(long employeeID, Date start, Date end, boolean on) {
+        long from = Math.max(start.getTime(), slotStart[0]);
+        int slot = slotOf(from);
+        if (slot == -1 || end.getTime() <= from) {
+            return;
+        }
+        BitSet held = holds.get(employeeID);
+        if (held == null) {
+            held = new BitSet(SLOTS);
+            holds.put(employeeID, held);
+        }
+        BitSet avail = availability.get(employeeID);
+        BitSet booking = bookings.get(employeeID);
+        for (; slot < SLOTS && slotStart[slot] < end.getTime(); ++slot) {
+            if (held.get(slot) == on) {
+                continue;
+            }
+            held.set(slot, on);
+            if (avail != null && avail.get(slot)
+                && (booking == null || !booking.get(slot)))
+            {
+                booked[slot] += on ? 1 : -1;
+            }
+        }
+    }
+
+    /** @return Whether no bit from first to last inclusive is set */
+    private static boolean noneSet(BitSet bits, int first, int last) {
+        if (bits == null) {
+            return true;
+        }
+        int set = bits.nextSetBit(first);
+        return set == -1 || set > last;
+    }
+
+    /** Updates the headcounts of only the slots whose availability changed */
+    private void setAvailability(long employeeID, BitSet slots) {
+        BitSet old = availability.get(employeeID);
+        BitSet changed = (BitSet)slots.clone();
+        if (old != null) {
+            changed.xor(old);
+        }
+        BitSet booking = bookings.get(employeeID);
+        BitSet held = holds.get(employeeID);
+        for (int slot = changed.nextSetBit(0); slot != -1;
+            slot = changed.nextSetBit(slot + 1))
+        {
+            int delta = slots.get(slot) ? 1 : -1;
+            available[slot] += delta;
+            if ((booking != null && booking.get(slot))
+                || (held != null && held.get(slot)))
+            {
+                booked[slot] += delta;
+            }
+        }
+        availability.put(employeeID, slots);
+    }
+
+    /** @return The slot a WeekDate falls in. Sunday's slots come first. */
+    static int slotOf(WeekDate wd) {
+        // DayOfWeek counts Monday as 1 and Sunday as 7
+        int day = wd.getDayOfWeek().getValue() % 7;
+        return day * HOURS_PER_DAY + wd.getStartingHour();
+    }
+
+    /** @return The slot the time falls in, or -1 if it is not in this week.
+      * Hours are nearly always the same length, so the first guess is at
+      * most one slot out.
+      */
+    int slotOf(long millis) {
+        if (millis < slotStart[0] || millis >= slotStart[SLOTS]) {
+            return -1;
+        }
+        int slot = (int)((millis - slotStart[0]) / MILLIS_PER_HOUR);
+        slot = Math.min(slot, SLOTS - 1);
+        while (slot > 0 && slotStart[slot] > millis) {
+            --slot;
+        }
+        while (slot < SLOTS - 1 && slotStart[slot + 1] <= millis) {
+            ++slot;
+        }
+        return slot;
+    }
+}
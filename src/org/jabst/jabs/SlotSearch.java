@@ -0,0 +1,198 @@
+package org.jabst.jabs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/** Finds the earliest times an employee is available and has no
+  * appointment for as many hour long slots as an appointment needs, over a
+  * run of whole weeks. An appointment books every slot it overlaps.
+  * Each employee's hours are a sorted list of slots that repeats every
+  * week, so every employee's slots are merged in time order by a priority
+  * queue holding each employee's next slot. Only the slots looked at are
+  * ever worked out; no Timetables or per-week grids are built.
+  */
+class SlotSearch {
+    private static final long MILLIS_PER_HOUR = 3600000L;
+
+    /** When each slot searched starts, week after week, then the end of
+      * the last week */
+    private final long[] slotStart;
+    /** How many slots are searched */
+    private final int horizon;
+    /** The slots each employee has an appointment in, by employee ID */
+    private final HashMap<Long, BitSet> bookings =
+        new HashMap<Long, BitSet>();
+
+    /** Creates a search with no bookings
+      * @param weekStart Midnight at the start of the Sunday of the first
+      * week. See SlotOccupancy.weekStartOf.
+      * @param weeks How many weeks to search
+      */
+    SlotSearch(Date weekStart, int weeks) {
+        this.horizon = weeks * SlotOccupancy.SLOTS;
+        this.slotStart = new long[horizon + 1];
+        SlotOccupancy.fillSlotStarts(weekStart, weeks, slotStart);
+    }
+
+    /** @return The end of the last week searched */
+    Date getEnd() {
+        return new Date(slotStart[horizon]);
+    }
+
+    /** Records that the employee has an appointment from start until end,
+      * booking every slot it overlaps. Parts not in the weeks searched are
+      * ignored.
+      */
+    void book(long employeeID, Date start, Date end) {
+        long from = Math.max(start.getTime(), slotStart[0]);
+        int first = slotOf(from);
+        if (first == -1 || end.getTime() <= from) {
+            return;
+        }
+        int last = slotOf(Math.min(end.getTime(), slotStart[horizon]) - 1);
+        BitSet booking = bookings.get(employeeID);
+        if (booking == null) {
+            booking = new BitSet(horizon);
+            bookings.put(employeeID, booking);
+        }
+        booking.set(first, last + 1);
+    }
+
+    /** Finds the earliest slots an employee is available and not booked
+      * in, along with the slots after them the appointment runs into
+      * @param availability Each employee's weekly hours, by employee ID
+      * @param after Slots starting before this are skipped
+      * @param count How many slots to find
+      * @param appointmentType The type of the Appointments returned
+      * @param duration How long the appointments go for
+      * @return Up to count unsaved Appointments with no customer, one for
+      * each starting slot and employee found, earliest first and then by
+      * employee ID. Fewer if the weeks run out first.
+      */
+    ArrayList<Appointment> find(
+        Map<Long, ? extends Collection<WeekDate>> availability,
+        Date after, int count, int appointmentType, Duration duration)
+    {
+        ArrayList<Appointment> found = new ArrayList<Appointment>();
+        int first = firstSlotFrom(after.getTime());
+        if (first == -1 || count <= 0) {
+            return found;
+        }
+        // How many slots from the start slot the appointment overlaps
+        int length = (int)Math.max(1,
+            (duration.toMillis() + MILLIS_PER_HOUR - 1) / MILLIS_PER_HOUR);
+
+        // Employees in order of ID, so ties are broken the same every time
+        TreeMap<Long, ? extends Collection<WeekDate>> byID =
+            new TreeMap<Long, Collection<WeekDate>>(availability);
+        long[] ids = new long[byID.size()];
+        int[][] weekly = new int[ids.length][];
+        BitSet[] weeklyBits = new BitSet[ids.length];
+        // Each employee's next slot, as a position in their weekly slots
+        // repeated week after week
+        int[] next = new int[ids.length];
+
+        // Entries are the slot << 32 | the employee's index, so the queue
+        // gives the earliest slot, and the lowest ID for equal slots
+        PriorityQueue<Long> queue = new PriorityQueue<Long>(
+            Math.max(1, ids.length));
+        int employees = 0;
+        for (Map.Entry<Long, ? extends Collection<WeekDate>> entry
+            : byID.entrySet())
+        {
+            BitSet bits = weeklySlots(entry.getValue());
+            if (bits.isEmpty()) {
+                continue;
+            }
+            int[] slots = bits.stream().toArray();
+            int e = employees++;
+            ids[e] = entry.getKey();
+            weekly[e] = slots;
+            weeklyBits[e] = bits;
+            int i = Arrays.binarySearch(slots, first % SlotOccupancy.SLOTS);
+            next[e] = first / SlotOccupancy.SLOTS * slots.length
+                + (i < 0 ? -i - 1 : i);
+            offer(queue, slotAt(weekly[e], next[e]), e);
+        }
+
+        while (found.size() < count && !queue.isEmpty()) {
+            long head = queue.poll();
+            int slot = (int)(head >>> 32);
+            int e = (int)head;
+            if (isFree(ids[e], weeklyBits[e], slot, length)) {
+                found.add(new Appointment(new Date(slotStart[slot]),
+                    appointmentType, ids[e], null));
+            }
+            offer(queue, slotAt(weekly[e], ++next[e]), e);
+        }
+        return found;
+    }
+
+    /** @return Whether the employee is available and not booked in each of
+      * the length slots from first, which are all searched */
+    private boolean isFree(long employeeID, BitSet weekly, int first,
+        int length)
+    {
+        if (first + length > horizon) {
+            return false;
+        }
+        for (int slot = first + 1; slot < first + length; ++slot) {
+            if (!weekly.get(slot % SlotOccupancy.SLOTS)) {
+                return false;
+            }
+        }
+        BitSet booking = bookings.get(employeeID);
+        if (booking == null) {
+            return true;
+        }
+        int booked = booking.nextSetBit(first);
+        return booked == -1 || booked >= first + length;
+    }
+
+    /** Adds the employee's next slot to the queue, if it is searched */
+    private void offer(PriorityQueue<Long> queue, int slot, int employee) {
+        if (slot < horizon) {
+            queue.add((long)slot << 32 | employee);
+        }
+    }
+
+    /** @return The slot at a position in weekly slots repeated every week */
+    private static int slotAt(int[] weekly, int position) {
+        return position / weekly.length * SlotOccupancy.SLOTS
+            + weekly[position % weekly.length];
+    }
+
+    /** @return The slots of the week the hours fall in */
+    private static BitSet weeklySlots(Collection<WeekDate> hours) {
+        BitSet slots = new BitSet(SlotOccupancy.SLOTS);
+        for (WeekDate wd : hours) {
+            slots.set(SlotOccupancy.slotOf(wd));
+        }
+        return slots;
+    }
+
+    /** @return The slot the time falls in, or -1 if it is not searched */
+    private int slotOf(long millis) {
+        if (millis < slotStart[0] || millis >= slotStart[horizon]) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(slotStart, millis);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /** @return The first slot starting at or after the time, or -1 if
+      * there is none */
+    private int firstSlotFrom(long millis) {
+        int i = Arrays.binarySearch(slotStart, millis);
+        int slot = i >= 0 ? i : -i - 1;
+        return slot < horizon ? slot : -1;
+    }
+}
@@ -0,0 +1,88 @@
+package org.jabst.jabs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.HashMap;
+
+/** Keeps the PreparedStatements made on one connection so that each SQL
+  * string is only parsed and planned by the database once.
+  * Statements handed out are shared: bind all parameters before executing,
+  * don't close them, and finish with a ResultSet before preparing the same
+  * SQL again.
+  */
+class StatementCache {
+    private final Connection connection;
+    /** Prepared statements by their SQL text */
+    private final HashMap<String, PreparedStatement> statements =
+        new HashMap<String, PreparedStatement>();
+    /** Prepared statements that return generated keys, by their SQL text */
+    private final HashMap<String, PreparedStatement> inserts =
+        new HashMap<String, PreparedStatement>();
+
+    StatementCache(Connection connection) {
+        this.connection = connection;
+    }
+
+    /** Gets the prepared statement for the given SQL, preparing it on
+      * first use. Parameters from the last use are cleared.
+      * @param sql The SQL, with ? for each parameter
+      * @return A PreparedStatement ready to have its parameters set
+      * @throws SQLException If the SQL can't be prepared
+      */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement pstmt = statements.get(sql);
+        if (pstmt == null || pstmt.isClosed()) {
+            pstmt = connection.prepareStatement(sql);
+            statements.put(sql, pstmt);
+        }
+        else {
+            pstmt.clearParameters();
+        }
+        return pstmt;
+    }
+
+    /** Like prepare, but the statement makes the identity values of the rows
+      * it inserts available through getGeneratedKeys.
+      * @param sql The INSERT, with ? for each parameter
+      * @return A PreparedStatement ready to have its parameters set
+      * @throws SQLException If the SQL can't be prepared
+      */
+    PreparedStatement prepareInsert(String sql) throws SQLException {
+        PreparedStatement pstmt = inserts.get(sql);
+        if (pstmt == null || pstmt.isClosed()) {
+            pstmt = connection.prepareStatement(
+                sql, Statement.RETURN_GENERATED_KEYS
+            );
+            inserts.put(sql, pstmt);
+        }
+        else {
+            pstmt.clearParameters();
+        }
+        return pstmt;
+    }
+
+    Connection getConnection() { return connection; }
+
+    /** @return How many statements are cached */
+    int size() { return statements.size() + inserts.size(); }
+
+    /** Closes all the cached statements. The connection is left open. */
+    void close() {
+        closeAll(statements);
+        closeAll(inserts);
+    }
+
+    private static void closeAll(HashMap<String, PreparedStatement> cache) {
+        for (PreparedStatement pstmt : cache.values()) {
+            try {
+                pstmt.close();
+            } catch (SQLException sqle) {
+                // Closing anyway, nothing to do
+            }
+        }
+        cache.clear();
+    }
+}
@@ -1,5 +1,7 @@
 package org.jabst.jabs;
 
+import javafx.beans.value.ChangeListener;//runs when a value changes
+import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;//type of event
 import javafx.event.EventHandler;//this activates when a button is pressed
 import javafx.geometry.Insets;//insets = padding
@@ -11,11 +13,14 @@ import javafx.stage.WindowEvent;//when window closes
 import javafx.stage.Stage;//window
 
 import java.sql.SQLException;//for error handling
+import java.util.ArrayList;
+import java.util.List;
 
 public class SuperUserGUI {
 
     private static DatabaseManager dbm;
-
+    /** How many businesses are loaded into the list at a time */
+    private static final int PAGE_SIZE = 50;
 
     public static void display(SessionManager session) {
         /* Data getters */
@@ -27,8 +32,10 @@ public class SuperUserGUI {
         /* Setup window elements */
         VBox root = new VBox();//layout manager
             HBox hbDeleteBus = new HBox();
+                TextField tfFilter = new TextField();
                 ComboBox<Business> cbBusSelect = new ComboBox<Business>();
-                updateCombobox(cbBusSelect);
+                Button btMore = new Button("More");
+                btMore.setDisable(!updateCombobox(cbBusSelect, ""));
                 /*cbBusSelect.getItems().addAll(
                     dbm.getBusiness("default_business")
                 );*/
@@ -49,7 +56,9 @@ public class SuperUserGUI {
                                 dbm.deleteBusiness(
                                     cbBusSelect.getValue()
                                 );
-                                SuperUserGUI.updateCombobox(cbBusSelect);
+                                btMore.setDisable(!updateCombobox(
+                                    cbBusSelect, tfFilter.getText()
+                                ));
                             } catch (SQLException sqle) { 
                                 /* TODO: Error reporting */
                             }
@@ -61,6 +70,35 @@ public class SuperUserGUI {
                 lbBusSelect, cbBusSelect, btDelBusiness
             );
             hbDeleteBus.setSpacing(5);
+
+            HBox hbFilter = new HBox();
+                tfFilter.setPromptText("Business name starts with");
+                tfFilter.textProperty().addListener(
+                    new ChangeListener<String>() {
+                        @Override
+                        public void changed(
+                            ObservableValue<? extends String> observable,
+                            String oldText, String newText)
+                        {
+                            btMore.setDisable(
+                                !updateCombobox(cbBusSelect, newText)
+                            );
+                        }
+                    }
+                );
+                Label lbFilter = new Label("Filter");
+                lbFilter.setLabelFor(tfFilter);
+                lbFilter.setPadding(ins);
+                btMore.setOnAction(new EventHandler<ActionEvent>() {
+                    @Override
+                    public void handle(ActionEvent event) {
+                        btMore.setDisable(
+                            !loadNextPage(cbBusSelect, tfFilter.getText())
+                        );
+                    }
+                });
+            hbFilter.getChildren().addAll(lbFilter, tfFilter, btMore);
+            hbFilter.setSpacing(5);
             
             HBox hbNewBus = new HBox();
             Button btNewBus = new Button("Create...");
@@ -68,14 +106,16 @@ public class SuperUserGUI {
                 @Override
                 public void handle(ActionEvent e) {
                     CreateBusinessGUI.display(session);
-                    updateCombobox(cbBusSelect);
+                    btMore.setDisable(
+                        !updateCombobox(cbBusSelect, tfFilter.getText())
+                    );
                 }
             });
             Label lbNewBus = new Label("Create business");
             lbNewBus.setLabelFor(btNewBus);
             lbNewBus.setPadding(ins);
             hbNewBus.getChildren().addAll(lbNewBus, btNewBus);
-        root.getChildren().addAll(hbDeleteBus, hbNewBus);
+        root.getChildren().addAll(hbDeleteBus, hbFilter, hbNewBus);
         /* Root spacing and padding */
         root.setSpacing(2);
         root.setPadding(new Insets(5.0, 0.0, 5.0, 10.0));
@@ -94,9 +134,33 @@ public class SuperUserGUI {
         window.showAndWait();//put the window on the desktop
     }
     
-    static void updateCombobox(ComboBox<Business> cb) {
+    /** Replaces the businesses in the combobox with the first page of those
+      * whose name starts with the prefix
+      * @return Whether there may be more businesses after the page
+      */
+    static boolean updateCombobox(ComboBox<Business> cb, String namePrefix) {
         cb.getItems().clear();
-        cb.getItems().setAll(dbm.getAllBusinesses());
+        return loadNextPage(cb, namePrefix);
+    }
+
+    /** Adds the next page of businesses whose name starts with the prefix
+      * after the ones already in the combobox
+      * @return Whether there may be more businesses after the page
+      */
+    static boolean loadNextPage(ComboBox<Business> cb, String namePrefix) {
+        List<Business> items = cb.getItems();
+        String lastUsername = items.isEmpty() ?
+            null : items.get(items.size() - 1).username;
+        try {
+            ArrayList<Business> page = dbm.getBusinessesPage(
+                lastUsername, namePrefix, PAGE_SIZE
+            );
+            items.addAll(page);
+            return page.size() == PAGE_SIZE;
+        } catch (SQLException sqle) {
+            /* TODO: Error reporting */
+            return false;
+        }
     }
 }
 
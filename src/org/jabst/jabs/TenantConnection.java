@@ -0,0 +1,40 @@
+package org.jabst.jabs;
+
+import java.sql.Connection;
+
+import java.util.List;
+
+/** A connection to one business' database, along with anything
+  * DatabaseManager keeps about that business while the connection is open.
+  * TenantConnections are handed out by TenantConnectionPool.
+  */
+class TenantConnection {
+    /** The username of the business this database belongs to */
+    final String busUsername;
+    /** The open JDBC connection to db/$busUsername */
+    final Connection connection;
+    /** Prepared statements on connection, kept while it is pooled */
+    final StatementCache statements;
+    /** The business' appointment types, loaded when the database is opened */
+    final AppointmentTypeRegistry appointmentTypes;
+    /** Every AVAILABILITY row in order of day and time, or null if it has
+      * not been read since availability was last written */
+    List<WeekDate> availability;
+    /** availability without duplicates, or null if not yet worked out */
+    List<WeekDate> distinctAvailability;
+
+    TenantConnection(String busUsername, Connection connection) {
+        this.busUsername = busUsername;
+        this.connection = connection;
+        this.statements = new StatementCache(connection);
+        this.appointmentTypes = new AppointmentTypeRegistry();
+    }
+
+    /** Forgets the cached availability. Call once AVAILABILITY has been
+      * written, after the commit or rollback, so that nothing read while
+      * the write was under way stays cached. */
+    void invalidateAvailability() {
+        availability = null;
+        distinctAvailability = null;
+    }
+}
@@ -0,0 +1,162 @@
+package org.jabst.jabs;
+
+import java.sql.SQLException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import java.util.logging.Logger;
+
+/** Keeps the connections to recently used business databases open, so that
+  * switching between businesses does not reopen the database file each time.
+  * Connections are kept in least recently used order. When more than
+  * capacity are open, the least recently used ones are committed and closed.
+  * The connection most recently acquired is in use and is never evicted.
+  */
+class TenantConnectionPool {
+    /** Opens a business' database when it is not already in the pool */
+    interface Opener {
+        /** @return A new TenantConnection to the business, or null if the
+          * business does not exist or its database can't be opened */
+        TenantConnection open(String busUsername) throws SQLException;
+    }
+
+    /** How many business databases are kept open if not told otherwise */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /** Open connections by business username, least recently used first */
+    private final LinkedHashMap<String, TenantConnection> connections =
+        new LinkedHashMap<String, TenantConnection>(16, 0.75f, true);
+    private final Opener opener;
+    private final Logger logger;
+    private int capacity;
+    /** The connection last handed out by acquire. Never evicted. */
+    private TenantConnection active;
+
+    /** Creates an empty pool
+      * @param capacity The most business databases to keep open at once.
+      * Must be at least 1.
+      * @param opener Used to open databases that are not pooled
+      * @param logger Where to log connections being opened and evicted
+      */
+    TenantConnectionPool(int capacity, Opener opener, Logger logger) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                "Tenant pool capacity must be at least 1, was "+capacity);
+        }
+        this.capacity = capacity;
+        this.opener = opener;
+        this.logger = logger;
+    }
+
+    /** Gets the connection to the given business, opening it if it is not
+      * already open, and marks it as the one in use.
+      * @param busUsername The username of the business
+      * @return The connection, or null if it could not be opened
+      * @throws SQLException If a database error occurs while opening
+      */
+    TenantConnection acquire(String busUsername) throws SQLException {
+        TenantConnection tenant = connections.get(busUsername);
+        if (tenant != null && tenant.connection.isClosed()) {
+            logger.warning("Pooled connection to business "+busUsername
+                +" was closed. Reopening.");
+            connections.remove(busUsername);
+            tenant = null;
+        }
+
+        if (tenant == null) {
+            tenant = opener.open(busUsername);
+            if (tenant == null) {
+                return null;
+            }
+            connections.put(busUsername, tenant);
+            logger.info("Opened business database: "+busUsername
+                +" ("+connections.size()+"/"+capacity+" open)");
+        }
+
+        active = tenant;
+        evictIdle();
+        return tenant;
+    }
+
+    /** Commits and closes the connection to the given business if it is open.
+      * Does nothing if it is not pooled.
+      */
+    void evict(String busUsername) {
+        TenantConnection tenant = connections.remove(busUsername);
+        if (tenant != null) {
+            if (tenant == active) {
+                active = null;
+            }
+            closeQuietly(tenant);
+        }
+    }
+
+    /** Changes how many business databases may be open at once, closing the
+      * least recently used ones if there are now too many.
+      */
+    void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                "Tenant pool capacity must be at least 1, was "+capacity);
+        }
+        this.capacity = capacity;
+        evictIdle();
+    }
+
+    int getCapacity() { return capacity; }
+
+    /** @return How many business databases are open */
+    int size() { return connections.size(); }
+
+    /** Whether the given business' database is open in the pool */
+    boolean contains(String busUsername) {
+        return connections.containsKey(busUsername);
+    }
+
+    /** Commits every open business connection */
+    void commitAll() throws SQLException {
+        for (TenantConnection tenant : connections.values()) {
+            tenant.connection.commit();
+        }
+    }
+
+    /** Commits and closes every open business connection */
+    void closeAll() {
+        for (TenantConnection tenant : connections.values()) {
+            closeQuietly(tenant);
+        }
+        connections.clear();
+        active = null;
+    }
+
+    /** Closes least recently used connections until we are within capacity */
+    private void evictIdle() {
+        Iterator<Map.Entry<String, TenantConnection>> it =
+            connections.entrySet().iterator();
+        while (connections.size() > capacity && it.hasNext()) {
+            TenantConnection tenant = it.next().getValue();
+            if (tenant == active) {
+                continue;
+            }
+            it.remove();
+            logger.info("Evicting idle business database: "
+                +tenant.busUsername);
+            closeQuietly(tenant);
+        }
+    }
+
+    private void closeQuietly(TenantConnection tenant) {
+        tenant.statements.close();
+        try {
+            if (!tenant.connection.isClosed()) {
+                tenant.connection.commit();
+                tenant.connection.close();
+            }
+        } catch (SQLException sqle) {
+            logger.warning("Error closing business database "
+                +tenant.busUsername+". Continuing.");
+        }
+    }
+}
@@ -1,82 +1,204 @@
 package org.jabst.jabs;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+/** A grid of CellStatus, one row per day and one cell per hour.
+  * Each cell is stored in 2 bits, 32 cells to a long, so a week takes a few
+  * words and bulk operations work on a whole word of cells at a time.
+  */
 public class Timetable {
 
 	public static enum CellStatus {
 		FREE, BOOKED, BOOKED_BY_YOU, UNAVAILABLE
 	};
-	
-	public ArrayList<ArrayList<CellStatus>> table;
-	public int days = 7;
-	public int hours = 8;
 
+	private static final CellStatus[] STATUSES = CellStatus.values();
+	private static final int BITS_PER_CELL = 2;
+	private static final int CELLS_PER_WORD = Long.SIZE / BITS_PER_CELL;
+	private static final long CELL_MASK = (1L << BITS_PER_CELL) - 1;
+	/** The low bit of every cell in a word */
+	private static final long LOW_BITS = 0x5555555555555555L;
+
+	/** The CellStatus ordinal of every cell, day by day. Bits past the last
+	  * cell are always 0. */
+	private final long[] cells;
+
+	/** The cells as a list of days, each a list of hours. Reads and writes
+	  * go straight through to the packed cells. Kept for code that walks
+	  * table.get(day).get(hour).
+	  */
+	public final List<List<CellStatus>> table;
+	public final int days;
+	public final int hours;
+
+	/** Creates a week of 8 hour days, all FREE. If blank is false, creates
+	  * a small fixed table for trying out the GUI instead.
+	  */
 	public Timetable(boolean blank) {
-		if (blank) {
-			table = new ArrayList<ArrayList<CellStatus>>();
-			ArrayList<CellStatus> row;
-			for (int rowIdx = 0; rowIdx < days; ++rowIdx) {
-				row = new ArrayList<CellStatus>();
-				for (int cell = 0; cell < hours; ++cell) {
-					row.add(CellStatus.FREE);
+		this(blank ? 7 : 6, blank ? 8 : 3);
+		if (!blank) {
+			CellStatus F = CellStatus.FREE;
+			CellStatus B = CellStatus.BOOKED;
+			CellStatus Y = CellStatus.BOOKED_BY_YOU;
+			CellStatus[][] sample = {
+				{F, B, Y},
+				{F, B, Y},
+				{F, Y, Y},
+				{B, B, Y},
+				{Y, B, F},
+				{F, F, B}
+			};
+			for (int day = 0; day < days; ++day) {
+				for (int hour = 0; hour < hours; ++hour) {
+					set(day, hour, sample[day][hour]);
 				}
-				table.add(row);
 			}
 		}
-		else {
-			table = new ArrayList<ArrayList<CellStatus>>();
-				ArrayList<CellStatus> r1 = new ArrayList<CellStatus>();
-			r1.add(CellStatus.FREE);
-			r1.add(CellStatus.BOOKED);
-			r1.add(CellStatus.BOOKED_BY_YOU);
-			table.add(r1);
-				ArrayList<CellStatus> r2 = new ArrayList<CellStatus>();
-			r2.add(CellStatus.FREE);
-			r2.add(CellStatus.BOOKED_BY_YOU);
-			r2.add(CellStatus.BOOKED_BY_YOU);
-				ArrayList<CellStatus> r3 = new ArrayList<CellStatus>();
-			r3.add(CellStatus.BOOKED);
-			r3.add(CellStatus.BOOKED);
-			r3.add(CellStatus.BOOKED_BY_YOU);
-				ArrayList<CellStatus> r4 = new ArrayList<CellStatus>();
-			r4.add(CellStatus.BOOKED_BY_YOU);
-			r4.add(CellStatus.BOOKED);
-			r4.add(CellStatus.FREE);
-				ArrayList<CellStatus> r5 = new ArrayList<CellStatus>();
-			r5.add(CellStatus.FREE);
-			r5.add(CellStatus.FREE);
-			r5.add(CellStatus.BOOKED);
-			
-			table.add(r1);
-			table.add(r2);
-			table.add(r3);
-			table.add(r4);
-			table.add(r5);
+	}
+
+	/** Creates a table of the given size, all FREE */
+	public Timetable(int days, int hours) {
+		this.days = days;
+		this.hours = hours;
+		this.cells = new long[(days * hours + CELLS_PER_WORD - 1) / CELLS_PER_WORD];
+
+		ArrayList<List<CellStatus>> rows = new ArrayList<List<CellStatus>>(days);
+		for (int day = 0; day < days; ++day) {
+			rows.add(new Row(day));
 		}
+		this.table = Collections.unmodifiableList(rows);
 	}
 
-	void createBlankTables() {
-		table = new ArrayList<ArrayList<CellStatus>>();
-		ArrayList<CellStatus> row;
-		for (int rowIdx = 0; rowIdx < days; ++rowIdx) {
-			row = new ArrayList<CellStatus>();
-			for (int cell = 0; cell < hours; ++cell) {
-				row.add(CellStatus.FREE);
-			}
-			table.add(row);
+	public CellStatus get(int day, int hour) {
+		int cell = cellIndex(day, hour);
+		long word = cells[cell / CELLS_PER_WORD];
+		int shift = (cell % CELLS_PER_WORD) * BITS_PER_CELL;
+		return STATUSES[(int)((word >>> shift) & CELL_MASK)];
+	}
+
+	public void set(int day, int hour, CellStatus status) {
+		int cell = cellIndex(day, hour);
+		int shift = (cell % CELLS_PER_WORD) * BITS_PER_CELL;
+		long word = cells[cell / CELLS_PER_WORD] & ~(CELL_MASK << shift);
+		cells[cell / CELLS_PER_WORD] = word | ((long)status.ordinal() << shift);
+	}
+
+	/** Sets every cell to the status */
+	public void fill(CellStatus status) {
+		long pattern = pattern(status);
+		for (int i = 0; i < cells.length; ++i) {
+			cells[i] = pattern & usedBits(i);
 		}
 	}
 
+	/** @return How many cells have the status */
+	public int count(CellStatus status) {
+		long pattern = pattern(status);
+		int count = 0;
+		for (int i = 0; i < cells.length; ++i) {
+			count += Long.bitCount(matches(cells[i], pattern) & usedBits(i));
+		}
+		return count;
+	}
+
+	/** Sets every cell that has the status in other to the status here too.
+	  * Other cells are left alone.
+	  * @param other A table of the same size
+	  */
+	public void union(Timetable other, CellStatus status) {
+		checkSameSize(other);
+		long pattern = pattern(status);
+		for (int i = 0; i < cells.length; ++i) {
+			long mask = spread(matches(other.cells[i], pattern) & usedBits(i));
+			cells[i] = (cells[i] & ~mask) | (pattern & mask);
+		}
+	}
+
+	/** Sets every cell that has the status here but not in other to FREE.
+	  * Other cells are left alone.
+	  * @param other A table of the same size
+	  */
+	public void intersect(Timetable other, CellStatus status) {
+		checkSameSize(other);
+		long pattern = pattern(status);
+		for (int i = 0; i < cells.length; ++i) {
+			long onlyHere = matches(cells[i], pattern)
+				& ~matches(other.cells[i], pattern);
+			cells[i] &= ~spread(onlyHere);
+		}
+	}
+
+	void createBlankTables() {
+		fill(CellStatus.FREE);
+	}
+
 	void createTablesOfType(CellStatus status) {
-		table = new ArrayList<ArrayList<CellStatus>>();
-		ArrayList<CellStatus> row;
-		for (int rowIdx = 0; rowIdx < days; ++rowIdx) {
-			row = new ArrayList<CellStatus>();
-			for (int cell = 0; cell < hours; ++cell) {
-				row.add(status);
-			}
-			table.add(row);
+		fill(status);
+	}
+
+	private int cellIndex(int day, int hour) {
+		if (day < 0 || day >= days || hour < 0 || hour >= hours) {
+			throw new IndexOutOfBoundsException(
+				"Cell ("+day+", "+hour+") outside "+days+"x"+hours+" table");
+		}
+		return day * hours + hour;
+	}
+
+	private void checkSameSize(Timetable other) {
+		if (other.days != days || other.hours != hours) {
+			throw new IllegalArgumentException(
+				"Timetable is "+other.days+"x"+other.hours
+				+", expected "+days+"x"+hours);
+		}
+	}
+
+	/** @return The bits of word i that hold cells */
+	private long usedBits(int i) {
+		int cellsInWord = Math.min(CELLS_PER_WORD, days * hours - i * CELLS_PER_WORD);
+		return cellsInWord == CELLS_PER_WORD ?
+			-1L : (1L << (cellsInWord * BITS_PER_CELL)) - 1;
+	}
+
+	/** @return A word with every cell set to the status */
+	private static long pattern(CellStatus status) {
+		return LOW_BITS * status.ordinal();
+	}
+
+	/** @return The low bit of each cell in word that equals the same cell in
+	  * pattern */
+	private static long matches(long word, long pattern) {
+		long diff = word ^ pattern;
+		return ~(diff | (diff >>> 1)) & LOW_BITS;
+	}
+
+	/** @return Both bits of each cell whose low bit is set in lowBits */
+	private static long spread(long lowBits) {
+		return lowBits | (lowBits << 1);
+	}
+
+	/** One day of the table as a list of hours */
+	private class Row extends AbstractList<CellStatus> {
+		private final int day;
+
+		Row(int day) {
+			this.day = day;
+		}
+
+		public CellStatus get(int hour) {
+			return Timetable.this.get(day, hour);
+		}
+
+		public CellStatus set(int hour, CellStatus status) {
+			CellStatus old = Timetable.this.get(day, hour);
+			Timetable.this.set(day, hour, status);
+			return old;
+		}
+
+		public int size() {
+			return hours;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -5,12 +5,12 @@ import javafx.scene.control.*;//buttons, labels  etc.
 import javafx.geometry.Insets;//insets = padding
 import javafx.scene.paint.Color;
 
-import java.util.ArrayList;
+import java.util.List;
 
 class TimetableGUI extends GridPane {
 
 	public boolean allEmployees = false;
-	public ArrayList<ArrayList<Timetable.CellStatus>> table;//data
+	public List<List<Timetable.CellStatus>> table;//data
 	public TimetableCellGUI cells[][];//GUI
 	public TimetableCellGUI.Type type;
 	public Timetable timetable;
@@ -61,12 +61,12 @@ class TimetableGUI extends GridPane {
 		System.out.println("a");
 	}
 
-	public void setTable(ArrayList<ArrayList<Timetable.CellStatus>> table) {
+	public void setTable(List<List<Timetable.CellStatus>> table) {
 		this.table = table;
 		update();
 	}
 
-	public ArrayList<ArrayList<Timetable.CellStatus>> getTable() {
+	public List<List<Timetable.CellStatus>> getTable() {
 		return this.table;
 	}
 
@@ -85,7 +85,6 @@ class TimetableGUI extends GridPane {
 				}
 			}
 		}
-		this.timetable.table = this.table;
 	}
 
 	//sets GUI from data
@@ -0,0 +1,52 @@
+package org.jabst.jabs;
+
+import java.util.HashSet;
+
+import org.jabst.jabs.util.BloomFilter;
+
+/** Which usernames are taken, for checking a new username as it is typed.
+  * DatabaseManager fills a Bloom filter with every username in CREDENTIALS
+  * when it starts, and keeps the usernames registered since then in an
+  * exact set. Most free usernames are then known to be free without asking
+  * the database; only possible hits need to be looked up.
+  */
+class UsernameIndex {
+    /** How often a free username needs a database lookup anyway */
+    static final double FALSE_POSITIVE_RATE = 0.01;
+    /** Room the filter is sized for, however few users there are */
+    static final int MIN_CAPACITY = 1024;
+
+    private final BloomFilter filter;
+    /** Usernames registered since the index was built */
+    private final HashSet<String> registered = new HashSet<String>();
+
+    /** @param users How many usernames there are now. The filter is sized
+      * for twice as many, to leave room for new users. */
+    UsernameIndex(int users) {
+        filter = new BloomFilter(
+            Math.max(MIN_CAPACITY, users * 2), FALSE_POSITIVE_RATE);
+    }
+
+    /** Adds a username that was already in the database */
+    void add(String username) {
+        filter.add(username);
+    }
+
+    /** Adds a username that has just been registered */
+    void register(String username) {
+        filter.add(username);
+        registered.add(username);
+    }
+
+    /** @return Whether the username is known to be taken without asking
+      * the database */
+    boolean isCertainlyTaken(String username) {
+        return registered.contains(username);
+    }
+
+    /** @return false if the username is certainly free; true if it might
+      * be taken and the database should be asked */
+    boolean mightBeTaken(String username) {
+        return filter.mightContain(username);
+    }
+}
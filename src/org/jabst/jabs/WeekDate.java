@@ -5,79 +5,113 @@ import java.time.format.TextStyle;
 import java.util.Locale;
 
 /** WeekDate represents a time and a day of week together.
- *  WeekDate is used to represent employee availability. It stores the time
- *  of day as 
+ *  WeekDate is used to represent employee availability. It stores the day
+ *  and the time of day, in seconds since midnight, packed into one int.
+ *  WeekDates are immutable, and equal if they have the same day and time.
  */
 public class WeekDate implements Comparable<WeekDate> {
-    /** Monday, Tuesday, ... @see java.time.DayOfWeek */
-    DayOfWeek dayOfWeek;
-    /** Range: 0 <= timeOfDay <= 86399 */
-    private int timeOfDay;
-    
-    public WeekDate(DayOfWeek dayOfWeek, int timeOfDay) {
-        this.dayOfWeek = dayOfWeek;
-        this.timeOfDay = timeOfDay;
-    }
-    
-    /** Gets the hour (0-23) that the time of day starts at */
-    public int getStartingHour() {
-        return timeOfDay / 3600;
+    /** Bits below the day in a packed WeekDate, enough for 86399 seconds */
+    private static final int DAY_SHIFT = 17;
+    private static final int TIME_MASK = (1 << DAY_SHIFT) - 1;
+    public static final int SECONDS_PER_DAY = 86400;
+    private static final int SECONDS_PER_HOUR = 3600;
+
+    /** The WeekDate at the start of every hour of the week, by
+      * (day - 1) * 24 + hour */
+    private static final WeekDate[] HOURLY = new WeekDate[7 * 24];
+    static {
+        for (DayOfWeek day : DayOfWeek.values()) {
+            for (int hour = 0; hour < 24; ++hour) {
+                HOURLY[(day.getValue() - 1) * 24 + hour] =
+                    new WeekDate(day, hour * SECONDS_PER_HOUR);
+            }
+        }
     }
-    
-    /** Sets the time of day to the given value in seconds.
-      * Note: you may want to construct a new WeekDate instead
+
+    /** DayOfWeek.getValue() << DAY_SHIFT | timeOfDay */
+    private final int packed;
+
+    /** @param timeOfDay Seconds since midnight. Range: 0 <= timeOfDay <= 86399
+      * @throws IllegalArgumentException If timeOfDay is out of range
       */
-    public boolean setTimeOfDay(int timeOfDay) {
-        if (0 <= timeOfDay && timeOfDay <= 86399) {
-            this.timeOfDay = timeOfDay;
-            return true;
-        } else return false;
+    public WeekDate(DayOfWeek dayOfWeek, int timeOfDay) {
+        this.packed = pack(dayOfWeek.getValue(), timeOfDay);
     }
-    
-    /** Sets the time of day to the given hour (0-23)
-      * Note: you may want to construct a new WeekDate instead
+
+    /** Gets the WeekDate for the day and time. WeekDates on the hour are
+      * shared instances, so this does not allocate for them.
+      * @param timeOfDay Seconds since midnight. Range: 0 <= timeOfDay <= 86399
       */
-    public boolean setTimeOfDayHour(int hour) {
-        if (0 <= hour && hour <= 23) {
-            timeOfDay = hour*3600;
-            return true;
-        } else return false;
+    public static WeekDate of(DayOfWeek dayOfWeek, int timeOfDay) {
+        if (timeOfDay % SECONDS_PER_HOUR == 0
+            && 0 <= timeOfDay && timeOfDay < SECONDS_PER_DAY)
+        {
+            return HOURLY[(dayOfWeek.getValue() - 1) * 24
+                + timeOfDay / SECONDS_PER_HOUR];
+        }
+        return new WeekDate(dayOfWeek, timeOfDay);
     }
 
-    /** Sets the time of day to the given hour (0-23), minute (0-59), second (0-59)
-      * Note: you may want to construct a new WeekDate instead
+    /** Gets the WeekDate at the start of the given hour (0-23) */
+    public static WeekDate ofHour(DayOfWeek dayOfWeek, int hour) {
+        return of(dayOfWeek, hour * SECONDS_PER_HOUR);
+    }
+
+    /** Gets the WeekDate from its packed form. See getPacked. */
+    public static WeekDate ofPacked(int packed) {
+        return of(DayOfWeek.of(packed >>> DAY_SHIFT), packed & TIME_MASK);
+    }
+
+    /** Packs a day and time into the int used by getPacked, without creating
+      * a WeekDate. Packed WeekDates are never 0, and sort in the same order
+      * as the WeekDates.
+      * @param day DayOfWeek.getValue(), 1 (Monday) to 7 (Sunday)
+      * @param timeOfDay Seconds since midnight
+      * @throws IllegalArgumentException If either is out of range
       */
-    public boolean setTimeOfDayHMS(int hour, int minute, int second) {
-        if (0 <= hour && hour <= 23) {
-        	if(0 <= minute && minute < 60) {
-        		if(0 <= second && second < 60) {
-		            timeOfDay = hour*3600 + minute*60 + second;
-		            return true;
-        		}
-        	}
+    public static int pack(int day, int timeOfDay) {
+        if (day < 1 || day > 7) {
+            throw new IllegalArgumentException("Invalid day of week: "+day);
+        }
+        if (timeOfDay < 0 || timeOfDay >= SECONDS_PER_DAY) {
+            throw new IllegalArgumentException(
+                "Invalid time of day: "+timeOfDay);
         }
-        return false;
+        return day << DAY_SHIFT | timeOfDay;
+    }
+
+    /** @return The day and time packed into one int. See pack. */
+    public int getPacked() { return packed; }
+
+    /** Gets the hour (0-23) that the time of day starts at */
+    public int getStartingHour() {
+        return getTime() / SECONDS_PER_HOUR;
     }
-    
-    public int getTime() { return timeOfDay; }
-    public DayOfWeek getDayOfWeek() { return dayOfWeek; }
+
+    public int getTime() { return packed & TIME_MASK; }
+    public DayOfWeek getDayOfWeek() { return DayOfWeek.of(packed >>> DAY_SHIFT); }
 
     public int compareTo(WeekDate other) {
-    	int day = this.dayOfWeek.compareTo(other.getDayOfWeek());
-    	if(day == 0) {
-    		return this.getTime() - other.getTime();
-    	} else {
-    		return day;
-    	}
+        return Integer.compare(packed, other.packed);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof WeekDate && ((WeekDate)other).packed == packed;
     }
-    
+
+    @Override
+    public int hashCode() {
+        return packed;
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append(dayOfWeek.getDisplayName(TextStyle.FULL, Locale.UK));
+        sb.append(getDayOfWeek().getDisplayName(TextStyle.FULL, Locale.UK));
         sb.append(" ");
         sb.append(String.format("%02d", getStartingHour()));
         sb.append(":");
-        sb.append(String.format("%02d", (timeOfDay/60)%60));
+        sb.append(String.format("%02d", (getTime()/60)%60));
         return sb.toString();
     }
 }
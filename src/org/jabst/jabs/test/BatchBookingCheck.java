@@ -0,0 +1,118 @@
+package org.jabst.jabs.test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+
+import org.jabst.jabs.Appointment;
+import org.jabst.jabs.Customer;
+import org.jabst.jabs.DatabaseManager;
+
+/** Checks DatabaseManager.saveAppointments against an in-memory database:
+  * a batch holding free times, a clash with an existing booking, two of its
+  * own that overlap, and appointments the database rejects outright, so
+  * the batch has to be sent again without them.
+  * Run with: java org.jabst.jabs.test.BatchBookingCheck
+  */
+public class BatchBookingCheck {
+    /** The default employee and appointment type */
+    private static final long EMPLOYEE = 0;
+    private static final int HOUR_TYPE = 0;
+    private static final long NO_EMPLOYEE = 9999;
+    private static final int NO_TYPE = 9999;
+
+    public static void main(String[] args) throws Exception {
+        DatabaseManager dbm = DatabaseManager.inMemory("batchbookingcheck");
+        try {
+            expect(dbm.connectToBusiness(), "could not connect");
+            Customer customer = dbm.getCustomer("default_customer");
+            int halfHourType =
+                dbm.addAppointmentType("half hour", 100, Duration.ofMinutes(30));
+            long other = dbm.addEmployee("other employee");
+
+            expect(dbm.saveAppointments(new ArrayList<Appointment>()).length
+                == 0, "an empty batch saved something");
+            checkBatch(dbm, customer, halfHourType, other);
+        } finally {
+            dbm.close();
+        }
+        System.out.println("BatchBooking ok");
+    }
+
+    private static void checkBatch(DatabaseManager dbm, Customer customer,
+        int halfHourType, long other) throws SQLException
+    {
+        Appointment booked = new Appointment(
+            at(9, 0), HOUR_TYPE, EMPLOYEE, customer);
+        expect(dbm.saveAppointment(booked), "09:00 not booked");
+
+        ArrayList<Appointment> batch = new ArrayList<Appointment>();
+        boolean[] expected = {
+            true,  // 08:00-09:00 touches the booking at 09:00
+            false, // 09:30 is inside the booking at 09:00
+            false, // no such employee
+            true,  // 10:00-11:00
+            false, // 10:30 is inside 10:00, earlier in the batch
+            false, // no such type
+            true,  // 11:00 touches 10:00-11:00
+            true   // 09:00 for another employee
+        };
+        batch.add(new Appointment(at(8, 0), HOUR_TYPE, EMPLOYEE, customer));
+        batch.add(new Appointment(at(9, 30), halfHourType, EMPLOYEE, customer));
+        batch.add(new Appointment(at(13, 0), HOUR_TYPE, NO_EMPLOYEE, customer));
+        batch.add(new Appointment(at(10, 0), HOUR_TYPE, EMPLOYEE, customer));
+        batch.add(new Appointment(at(10, 30), halfHourType, EMPLOYEE, customer));
+        batch.add(new Appointment(at(15, 0), NO_TYPE, EMPLOYEE, customer));
+        batch.add(new Appointment(at(11, 0), halfHourType, EMPLOYEE, customer));
+        batch.add(new Appointment(at(9, 0), HOUR_TYPE, other, customer));
+
+        boolean[] saved = dbm.saveAppointments(batch);
+        expect(saved.length == batch.size(), saved.length+" results");
+        for (int i = 0; i < saved.length; ++i) {
+            Appointment apt = batch.get(i);
+            expect(saved[i] == expected[i], "appointment "+i+" at "
+                +apt.getDate()+" saved: "+saved[i]);
+            expect(saved[i] == (apt.getAppointmentID() >= 0),
+                "appointment "+i+" has ID "+apt.getAppointmentID());
+        }
+
+        // The database holds just the saved ones, under the IDs given
+        final HashMap<Long, Appointment> stored =
+            new HashMap<Long, Appointment>();
+        dbm.getAppointments(at(0, 0), at(24, 0), DatabaseManager.ALL_EMPLOYEES,
+            apt -> stored.put(apt.getAppointmentID(), apt));
+        expect(stored.remove(booked.getAppointmentID()) != null,
+            "lost the booking made before the batch");
+        for (int i = 0; i < saved.length; ++i) {
+            if (!saved[i]) {
+                continue;
+            }
+            Appointment apt = batch.get(i);
+            Appointment found = stored.remove(apt.getAppointmentID());
+            expect(found != null, "appointment "+i+" is not stored under "
+                +apt.getAppointmentID());
+            expect(found.getDate().equals(apt.getDate())
+                && found.getEmployeeID() == apt.getEmployeeID()
+                && found.getAppointmentType() == apt.getAppointmentType(),
+                "appointment "+i+"'s ID was given to another appointment");
+        }
+        expect(stored.isEmpty(), "stored appointments not saved by the batch: "
+            +stored.size());
+    }
+
+    /** @return The time on a day well clear of the default appointments */
+    private static Date at(int hour, int minute) {
+        return new GregorianCalendar(2031, Calendar.MARCH, 10, hour, minute)
+            .getTime();
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
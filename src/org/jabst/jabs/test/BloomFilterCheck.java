@@ -0,0 +1,64 @@
+package org.jabst.jabs.test;
+
+import org.jabst.jabs.util.BloomFilter;
+
+/** Checks util.BloomFilter never forgets a string it was given, and that
+  * its false positive rate is near the one asked for.
+  * Run with: java org.jabst.jabs.test.BloomFilterCheck
+  */
+public class BloomFilterCheck {
+    private static final int INSERTIONS = 20000;
+    private static final double RATE = 0.01;
+
+    public static void main(String[] args) {
+        checkSizing();
+        checkRate(INSERTIONS, RATE);
+        checkRate(INSERTIONS, 0.1);
+        checkRate(1, RATE);
+        System.out.println("BloomFilter ok");
+    }
+
+    private static void checkSizing() {
+        BloomFilter filter = new BloomFilter(INSERTIONS, RATE);
+        long bits = filter.getBitCount();
+        expect(Long.bitCount(bits) == 1, bits+" bits is not a power of two");
+        expect(bits >= 9.5 * INSERTIONS, bits+" bits is too few");
+        expect(filter.getHashCount() >= 1, "no hashes");
+        expect(!filter.mightContain("anything"), "empty filter matched");
+        for (double rate : new double[] { 0, 1, -0.5 }) {
+            try {
+                new BloomFilter(INSERTIONS, rate);
+                throw new AssertionError("rate "+rate+" accepted");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /** Adds expected usernames, then counts how many others match */
+    private static void checkRate(int insertions, double rate) {
+        BloomFilter filter = new BloomFilter(insertions, rate);
+        for (int i = 0; i < insertions; ++i) {
+            filter.add("user"+i);
+        }
+        for (int i = 0; i < insertions; ++i) {
+            expect(filter.mightContain("user"+i), "lost user"+i);
+        }
+        int trials = Math.max(insertions, 10000);
+        int falsePositives = 0;
+        for (int i = 0; i < trials; ++i) {
+            if (filter.mightContain("other"+i)) {
+                ++falsePositives;
+            }
+        }
+        double measured = (double)falsePositives / trials;
+        // Rounding the size up to a power of two only makes it better
+        expect(measured <= rate * 2, "false positive rate "+measured
+            +" for "+insertions+" at "+rate);
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.jabst.jabs.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jabst.jabs.Appointment;
+import org.jabst.jabs.Customer;
+import org.jabst.jabs.DatabaseManager;
+
+/** Checks DatabaseManager.saveAppointment against an in-memory database:
+  * overlapping and touching bookings, rejected employees, and that
+  * APPOINTMENT_SLOT_UNIQUE lets only one of several managers racing for
+  * the same time book it.
+  * Run with: java org.jabst.jabs.test.BookingCheck
+  */
+public class BookingCheck {
+    private static final String GENERAL_DB = "bookingcheck";
+    /** The default business' database, as DatabaseManager.inMemory names it */
+    private static final String BUSINESS_URL =
+        "jdbc:hsqldb:mem:db/"+DatabaseManager.defaultBusinessName;
+    /** The default employee and appointment type */
+    private static final long EMPLOYEE = 0;
+    private static final int HOUR_TYPE = 0;
+    private static final int RACERS = 4;
+    /** Long enough for every racer, unless one is stuck on another's locks */
+    private static final long RACE_MILLIS = 10000;
+
+    public static void main(String[] args) throws Exception {
+        DatabaseManager dbm = DatabaseManager.inMemory(GENERAL_DB);
+        try {
+            expect(dbm.connectToBusiness(), "could not connect");
+            Customer customer = dbm.getCustomer("default_customer");
+            int halfHourType =
+                dbm.addAppointmentType("half hour", 100, Duration.ofMinutes(30));
+            checkOverlaps(dbm, customer, halfHourType);
+            checkUniqueConstraint(dbm);
+            checkRace(customer);
+        } finally {
+            dbm.close();
+        }
+        System.out.println("Booking ok");
+    }
+
+    private static void checkOverlaps(DatabaseManager dbm, Customer customer,
+        int halfHourType) throws SQLException
+    {
+        Appointment nine = new Appointment(
+            at(9, 0), HOUR_TYPE, EMPLOYEE, customer);
+        expect(dbm.saveAppointment(nine), "09:00 not booked");
+        expect(nine.getAppointmentID() >= 0, "09:00 has no ID");
+        expect(!book(dbm, 9, 0, HOUR_TYPE, EMPLOYEE, customer),
+            "09:00 booked twice");
+        expect(!book(dbm, 9, 30, halfHourType, EMPLOYEE, customer),
+            "09:30 booked inside 09:00-10:00");
+        expect(book(dbm, 8, 30, halfHourType, EMPLOYEE, customer),
+            "08:30-09:00 not booked though it only touches 09:00");
+        expect(!book(dbm, 8, 0, HOUR_TYPE, EMPLOYEE, customer),
+            "08:00-09:00 booked over 08:30");
+        expect(book(dbm, 10, 0, HOUR_TYPE, EMPLOYEE, customer),
+            "10:00 not booked though it only touches 09:00-10:00");
+        // Ends where the next one starts, but is shorter than the longest type
+        expect(book(dbm, 11, 0, halfHourType, EMPLOYEE, customer),
+            "11:00 not booked though it only touches 10:00-11:00");
+        expect(book(dbm, 11, 30, HOUR_TYPE, EMPLOYEE, customer),
+            "11:30 not booked though it only touches 11:00-11:30");
+
+        long other = dbm.addEmployee("other employee");
+        expect(book(dbm, 9, 0, HOUR_TYPE, other, customer),
+            "another employee could not book 09:00");
+        expect(!book(dbm, 12, 0, HOUR_TYPE, 9999, customer),
+            "booked an employee that does not exist");
+
+        expect(countBooked(dbm, at(0, 0), at(24, 0)) == 6,
+            "expected 6 appointments on the day");
+    }
+
+    /** Even an INSERT that skips saveAppointment's check cannot book a time
+      * twice */
+    private static void checkUniqueConstraint(DatabaseManager dbm)
+        throws SQLException
+    {
+        dbm.commit();
+        Connection raw = DriverManager.getConnection(BUSINESS_URL, "sa", "");
+        try {
+            PreparedStatement insert = raw.prepareStatement(
+                "INSERT INTO APPOINTMENT "
+               +"(DATE_AND_TIME, APPOINTMENT_TYPE, EMPLOYEE, CUSTOMER) "
+               +"VALUES (?, 0, 0, 'default_customer')"
+            );
+            insert.setTimestamp(1, new Timestamp(at(9, 0).getTime()));
+            try {
+                insert.executeUpdate();
+                throw new AssertionError("unchecked INSERT booked 09:00 twice");
+            } catch (SQLIntegrityConstraintViolationException expected) {
+            }
+        } finally {
+            raw.close();
+        }
+    }
+
+    /** Several managers, as if in different sessions, book the same time at
+      * once. Exactly one may get it. */
+    private static void checkRace(Customer customer) throws Exception {
+        final ArrayList<DatabaseManager> managers =
+            new ArrayList<DatabaseManager>();
+        for (int i = 0; i < RACERS; ++i) {
+            DatabaseManager racer = DatabaseManager.inMemory(GENERAL_DB);
+            expect(racer.connectToBusiness(), "racer could not connect");
+            managers.add(racer);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger booked = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (final DatabaseManager racer : managers) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    if (racer.saveAppointment(new Appointment(
+                        at(14, 0), HOUR_TYPE, EMPLOYEE, customer)))
+                    {
+                        booked.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    failed.incrementAndGet();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(RACE_MILLIS);
+            expect(!thread.isAlive(), "a racer is still waiting for a lock");
+        }
+        expect(failed.get() == 0, failed.get()+" racers failed");
+        expect(booked.get() == 1, booked.get()+" racers booked 14:00");
+        expect(countBooked(managers.get(0), at(14, 0), at(15, 0)) == 1,
+            "14:00 has more than one appointment");
+        for (DatabaseManager racer : managers) {
+            racer.close();
+        }
+    }
+
+    private static boolean book(DatabaseManager dbm, int hour, int minute,
+        int type, long employee, Customer customer) throws SQLException
+    {
+        return dbm.saveAppointment(
+            new Appointment(at(hour, minute), type, employee, customer));
+    }
+
+    private static int countBooked(DatabaseManager dbm, Date from, Date to)
+        throws SQLException
+    {
+        return dbm.getAppointments(
+            from, to, DatabaseManager.ALL_EMPLOYEES, apt -> {});
+    }
+
+    /** @return The time on a day well clear of the default appointments */
+    private static Date at(int hour, int minute) {
+        return new GregorianCalendar(2031, Calendar.MARCH, 3, hour, minute)
+            .getTime();
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
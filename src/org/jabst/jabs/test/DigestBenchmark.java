@@ -0,0 +1,131 @@
+package org.jabst.jabs.test;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.jabst.jabs.util.Digest;
+
+/** Compares util.Digest with the version that got a new MessageDigest and
+  * formatted each byte with String.format on every call.
+  * Runs each case for a few warmup rounds, then reports the mean time per
+  * operation over the measured rounds, in the manner of a JMH average time
+  * benchmark. Run with: java org.jabst.jabs.test.DigestBenchmark
+  */
+public class DigestBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int OPS_PER_ROUND = 200000;
+
+    /** Passwords of typical lengths, hashed in turn */
+    private static final String[] PASSWORDS = {
+        "hunter2", "correct horse battery staple", "p@ssw0rd!",
+        "\u00e9t\u00e9 \uD83D\uDE00"
+    };
+
+    /** Written to by each case so the work cannot be optimised away */
+    private static int sink;
+
+    /** A benchmarked operation, run once per call */
+    private interface Op {
+        void run(int i);
+    }
+
+    public static void main(String[] args) {
+        check();
+
+        final byte[] digest = new byte[Digest.SHA256_LENGTH];
+        final char[] hex = new char[Digest.SHA256_LENGTH * 2];
+        final byte[] fixed = Digest.sha256("benchmark");
+
+        report("sha256 (old)", i -> sink += oldSha256(password(i))[0]);
+        report("sha256", i -> sink += Digest.sha256(password(i))[0]);
+        report("sha256 into buffer", i -> {
+            Digest.sha256(password(i), digest, 0);
+            sink += digest[0];
+        });
+        report("digestToHexString (old)",
+            i -> sink += oldDigestToHexString(fixed).length());
+        report("digestToHexString",
+            i -> sink += Digest.digestToHexString(fixed).length());
+        report("toHex into buffer", i -> {
+            Digest.toHex(fixed, 0, fixed.length, hex, 0);
+            sink += hex[0];
+        });
+        System.out.println("(sink "+sink+")");
+    }
+
+    private static String password(int i) {
+        return PASSWORDS[i & 3];
+    }
+
+    /** Runs op for the warmup rounds, then prints the mean ns/op and its
+      * spread over the measured rounds */
+    private static void report(String name, Op op) {
+        for (int round = 0; round < WARMUP_ROUNDS; ++round) {
+            time(op);
+        }
+        double[] nsPerOp = new double[MEASURED_ROUNDS];
+        for (int round = 0; round < MEASURED_ROUNDS; ++round) {
+            nsPerOp[round] = (double)time(op) / OPS_PER_ROUND;
+        }
+        double mean = Arrays.stream(nsPerOp).average().getAsDouble();
+        double variance = Arrays.stream(nsPerOp)
+            .map(ns -> (ns - mean) * (ns - mean)).sum() / (MEASURED_ROUNDS - 1);
+        System.out.println(String.format("%-26s %10.1f +- %6.1f ns/op",
+            name, mean, Math.sqrt(variance)));
+    }
+
+    /** @return How long one round of op took, in nanoseconds */
+    private static long time(Op op) {
+        long start = System.nanoTime();
+        for (int i = 0; i < OPS_PER_ROUND; ++i) {
+            op.run(i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /** Checks the new version gives the old results, apart from the leading
+      * zeros the old hex dropped and the platform charset it encoded with */
+    private static void check() {
+        for (String password : PASSWORDS) {
+            byte[] expected = oldSha256Utf8(password);
+            if (!Arrays.equals(Digest.sha256(password), expected)) {
+                throw new AssertionError("sha256 differs for "+password);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : expected) {
+                hex.append(String.format("%02x", b));
+            }
+            if (!Digest.digestToHexString(expected).equals(hex.toString())) {
+                throw new AssertionError("hex differs for "+password);
+            }
+        }
+    }
+
+    private static byte[] oldSha256(String message) {
+        try {
+            return MessageDigest.getInstance("SHA-256")
+                .digest(message.getBytes());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] oldSha256Utf8(String message) {
+        try {
+            return MessageDigest.getInstance("SHA-256")
+                .digest(message.getBytes("UTF-8"));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String oldDigestToHexString(byte[] digest) {
+        StringBuffer s = new StringBuffer();
+        for (int i = 0; i < digest.length; ++i) {
+            s.append(String.format("%x", digest[i]));
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package org.jabst.jabs.test;
+
+import java.util.Random;
+
+import org.jabst.jabs.util.IntervalSet;
+
+/** Checks util.IntervalSet on its edge cases, then against a plain array of
+  * booked points on random ranges.
+  * Run with: java org.jabst.jabs.test.IntervalSetCheck
+  */
+public class IntervalSetCheck {
+    private static final int POINTS = 200;
+    private static final int RUNS = 500;
+    private static final int OPS_PER_RUN = 40;
+
+    public static void main(String[] args) {
+        checkTouching();
+        checkMergeChain();
+        checkRemove();
+        checkAgainstModel(new Random(22));
+        System.out.println("IntervalSet ok");
+    }
+
+    /** Ranges that only touch do not overlap, and can both be added */
+    private static void checkTouching() {
+        IntervalSet set = new IntervalSet();
+        expect(set.add(10, 20), "add [10, 20)");
+        expect(set.add(20, 30), "add [20, 30) touching the end");
+        expect(set.add(0, 10), "add [0, 10) touching the start");
+        expect(!set.overlaps(30, 40), "[30, 40) overlaps");
+        expect(!set.overlaps(-5, 0), "[-5, 0) overlaps");
+        expect(set.overlaps(19, 21), "[19, 21) does not overlap");
+        expect(set.overlaps(29, 30), "[29, 30) does not overlap");
+        expect(!set.overlaps(15, 15), "an empty range overlaps");
+        expect(!set.add(5, 15), "[5, 15) added over [0, 10)");
+        expect(set.size() == 3, "size "+set.size()+", expected 3");
+        try {
+            set.add(40, 40);
+            throw new AssertionError("an empty range was added");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /** One merge joins every range it overlaps, however many */
+    private static void checkMergeChain() {
+        IntervalSet set = new IntervalSet();
+        for (long start = 0; start < 100; start += 20) {
+            set.merge(start, start + 10);
+        }
+        set.merge(5, 85);
+        expect(set.size() == 1, "size "+set.size()+" after merging, expected 1");
+        expect(set.remove(0, 90), "[0, 90) not left by the merge");
+        // Touching ranges stay apart
+        set.merge(0, 10);
+        set.merge(10, 20);
+        expect(set.size() == 2, "touching ranges were joined");
+        // A range inside another changes nothing
+        set.merge(2, 3);
+        expect(set.size() == 2 && set.remove(0, 10), "merge inside a range");
+    }
+
+    private static void checkRemove() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 10);
+        expect(!set.remove(0, 5), "removed part of a range");
+        expect(!set.remove(1, 10), "removed a range by its end");
+        expect(set.remove(0, 10), "did not remove [0, 10)");
+        expect(set.isEmpty() && !set.overlaps(0, 10), "not empty after remove");
+    }
+
+    /** Adds and merges random ranges, comparing every answer with an array
+      * of which points are booked */
+    private static void checkAgainstModel(Random random) {
+        for (int run = 0; run < RUNS; ++run) {
+            IntervalSet set = new IntervalSet();
+            boolean[] booked = new boolean[POINTS];
+            for (int op = 0; op < OPS_PER_RUN; ++op) {
+                int start = random.nextInt(POINTS - 10);
+                int end = start + 1 + random.nextInt(10);
+                boolean overlap = anyBooked(booked, start, end);
+                if (random.nextBoolean()) {
+                    expect(set.add(start, end) == !overlap,
+                        "add ["+start+", "+end+")");
+                    if (!overlap) {
+                        book(booked, start, end);
+                    }
+                } else {
+                    set.merge(start, end);
+                    book(booked, start, end);
+                }
+                int from = random.nextInt(POINTS - 5);
+                int to = from + 1 + random.nextInt(5);
+                expect(set.overlaps(from, to) == anyBooked(booked, from, to),
+                    "overlaps ["+from+", "+to+")");
+            }
+        }
+    }
+
+    private static boolean anyBooked(boolean[] booked, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            if (booked[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void book(boolean[] booked, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            booked[i] = true;
+        }
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.jabst.jabs.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.jabst.jabs.DatabaseManager;
+import org.jabst.jabs.UserType;
+import org.jabst.jabs.util.Digest;
+import org.jabst.jabs.util.PasswordHash;
+
+/** Checks DatabaseManager.authenticate and authenticateAsync against an
+  * in-memory database whose users still have the unsalted SHA-256 hashes
+  * earlier versions stored: they can log in, their hashes are replaced with
+  * salted ones the first time, and wrong passwords never change a hash.
+  * Run with: java org.jabst.jabs.test.LoginCheck
+  */
+public class LoginCheck {
+    private static final String GENERAL_URL = "jdbc:hsqldb:mem:logincheck";
+    private static final String PASSWORD = "default";
+    /** Hashed differently by UTF-8 and many platform encodings */
+    private static final String ACCENTED_PASSWORD = "p\u00e2ssw\u00f6rd";
+
+    public static void main(String[] args) throws Exception {
+        DatabaseManager dbm = DatabaseManager.inMemory("logincheck");
+        try {
+            checkUpgrade(dbm);
+            checkAsync(dbm);
+            checkEncodings(dbm);
+        } finally {
+            dbm.close();
+        }
+        System.out.println("Login ok");
+    }
+
+    private static void checkUpgrade(DatabaseManager dbm) throws Exception {
+        String user = "default_customer";
+        byte[] legacy = storedHash(dbm, user);
+        expect(legacy.length == Digest.SHA256_LENGTH,
+            "default password hash is "+legacy.length+" bytes");
+
+        expect(dbm.authenticate(user, "wrong") == UserType.NON_EXISTANT,
+            "logged in with the wrong password");
+        expect(dbm.authenticate("nobody", PASSWORD) == UserType.NON_EXISTANT,
+            "logged in as a user that does not exist");
+        expect(Arrays.equals(storedHash(dbm, user), legacy),
+            "a wrong password changed the hash");
+
+        expect(dbm.authenticate(user, PASSWORD) == UserType.CUSTOMER,
+            "could not log in with the legacy hash");
+        byte[] upgraded = storedHash(dbm, user);
+        expect(upgraded.length == PasswordHash.MAX_LENGTH
+            && upgraded[0] == PasswordHash.VERSION_PBKDF2,
+            "legacy hash not upgraded");
+        expect(!PasswordHash.needsUpgrade(upgraded), "upgraded hash is stale");
+
+        expect(dbm.authenticate(user, PASSWORD) == UserType.CUSTOMER,
+            "could not log in with the upgraded hash");
+        expect(Arrays.equals(storedHash(dbm, user), upgraded),
+            "an up to date hash was made again");
+        expect(dbm.authenticate(user, "wrong") == UserType.NON_EXISTANT,
+            "logged in with the wrong password after the upgrade");
+    }
+
+    /** Logins on the login threads read and upgrade hashes through their
+      * own connections */
+    private static void checkAsync(DatabaseManager dbm) throws Exception {
+        expect(dbm.authenticateAsync("default_business", PASSWORD).get()
+            == UserType.BUSINESS, "business could not log in");
+        expect(dbm.authenticateAsync("root", "wrong").get()
+            == UserType.NON_EXISTANT, "root logged in with the wrong password");
+        expect(dbm.authenticateAsync("root", PASSWORD).get()
+            == UserType.SUPERUSER, "root could not log in");
+        for (String user : new String[] { "default_business", "root" }) {
+            expect(storedHash(dbm, user).length == PasswordHash.MAX_LENGTH,
+                user+"'s hash not upgraded");
+        }
+    }
+
+    /** Hashes stored from the UTF-8 bytes of a password, and from the
+      * platform's encoding as the first versions did, both still match */
+    private static void checkEncodings(DatabaseManager dbm) throws Exception {
+        dbm.commit();
+        Connection raw = DriverManager.getConnection(GENERAL_URL, "sa", "");
+        try {
+            PreparedStatement insert = raw.prepareStatement(
+                "INSERT INTO CREDENTIALS VALUES (?, ?)");
+            insert.setString(1, "utf8_user");
+            insert.setBytes(2, Digest.sha256(ACCENTED_PASSWORD));
+            insert.executeUpdate();
+            insert.setString(1, "platform_user");
+            insert.setBytes(2, Digest.legacySha256(ACCENTED_PASSWORD));
+            insert.executeUpdate();
+        } finally {
+            raw.close();
+        }
+        for (String user : new String[] { "utf8_user", "platform_user" }) {
+            expect(dbm.authenticate(user, "passw\u00f6rd")
+                == UserType.NON_EXISTANT,
+                user+" logged in with the wrong password");
+            expect(dbm.authenticate(user, ACCENTED_PASSWORD)
+                == UserType.CUSTOMER, user+" could not log in");
+            expect(storedHash(dbm, user).length == PasswordHash.MAX_LENGTH,
+                user+"'s hash not upgraded");
+            expect(dbm.authenticate(user, ACCENTED_PASSWORD)
+                == UserType.CUSTOMER, user+" could not log in once upgraded");
+        }
+    }
+
+    private static byte[] storedHash(DatabaseManager dbm, String username)
+        throws SQLException
+    {
+        dbm.commit();
+        Connection raw = DriverManager.getConnection(GENERAL_URL, "sa", "");
+        try {
+            PreparedStatement select = raw.prepareStatement(
+                "SELECT PASSWORD FROM CREDENTIALS WHERE USERNAME = ?");
+            select.setString(1, username);
+            ResultSet rs = select.executeQuery();
+            expect(rs.next(), "no credentials for "+username);
+            byte[] stored = rs.getBytes(1);
+            rs.close();
+            return stored;
+        } finally {
+            raw.close();
+        }
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
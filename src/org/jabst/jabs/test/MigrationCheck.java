@@ -0,0 +1,206 @@
+package org.jabst.jabs.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+
+import org.jabst.jabs.AppointmentType;
+import org.jabst.jabs.DatabaseManager;
+
+/** Checks that DatabaseManager brings a business database made by an early
+  * version of JABS up to date: bookings clashing with
+  * APPOINTMENT_SLOT_UNIQUE are moved to APPOINTMENT_CLASH, later steps run,
+  * and a database whose migration stalls is not opened.
+  * Run with: java org.jabst.jabs.test.MigrationCheck
+  */
+public class MigrationCheck {
+    private static final String BUSINESS = DatabaseManager.defaultBusinessName;
+    /** The business' database, as DatabaseManager.inMemory names it */
+    private static final String BUSINESS_URL = "jdbc:hsqldb:mem:db/"+BUSINESS;
+
+    /** The business tables as the first versions made them, before
+      * SCHEMA_VERSION existed */
+    private static final String[] VERSION_0_TABLES = {
+        "CREATE TABLE EMPLOYEE (EMPL_ID INTEGER GENERATED ALWAYS AS IDENTITY, "
+           +"EMPL_NAME VARCHAR(40) NOT NULL, ADDRESS VARCHAR(255), "
+           +"PHONE VARCHAR(10), PRIMARY KEY(EMPL_ID))",
+        "CREATE TABLE AVAILABILITY (EMPLOYEE INTEGER, AVAILABLE_TIME INTEGER, "
+           +"AVAILABLE_DAY INTEGER, "
+           +"FOREIGN KEY (EMPLOYEE) REFERENCES EMPLOYEE(EMPL_ID), "
+           +"PRIMARY KEY(EMPLOYEE, AVAILABLE_TIME, AVAILABLE_DAY))",
+        "CREATE TABLE APPOINTMENTTYPE ("
+           +"TYPE_ID INTEGER GENERATED ALWAYS AS IDENTITY, "
+           +"NAME VARCHAR(40) NOT NULL, COST_CENTS INTEGER NOT NULL, "
+           +"PRIMARY KEY (TYPE_ID))",
+        "CREATE TABLE APPOINTMENT (APT_ID INTEGER GENERATED ALWAYS AS IDENTITY, "
+           +"DATE_AND_TIME DATETIME NOT NULL, "
+           +"APPOINTMENT_TYPE INTEGER NOT NULL, EMPLOYEE INTEGER NOT NULL, "
+           +"CUSTOMER VARCHAR(20) NOT NULL, PRIMARY KEY (APT_ID), "
+           +"FOREIGN KEY (APPOINTMENT_TYPE) "
+           +"REFERENCES APPOINTMENTTYPE (TYPE_ID), "
+           +"FOREIGN KEY (EMPLOYEE) REFERENCES EMPLOYEE(EMPL_ID))",
+        "INSERT INTO EMPLOYEE VALUES (DEFAULT, 'first', 'a', '0420123456')",
+        "INSERT INTO EMPLOYEE VALUES (DEFAULT, 'second', 'b', '0420123456')",
+        "INSERT INTO APPOINTMENTTYPE VALUES (DEFAULT, 'only type', 99)",
+        "INSERT INTO AVAILABILITY VALUES (0, 32400, 1)"
+    };
+    /** Bookings as employee, time. IDs 1 and 2 clash with 0; 4 is the same
+      * time as 0 but for another employee, so it is kept. */
+    private static final String[][] BOOKINGS = {
+        { "0", "2030-01-07 09:00:00" },
+        { "0", "2030-01-07 09:00:00" },
+        { "0", "2030-01-07 09:00:00" },
+        { "0", "2030-01-07 10:00:00" },
+        { "1", "2030-01-07 09:00:00" }
+    };
+
+    public static void main(String[] args) throws Exception {
+        makeVersion0Database();
+        DatabaseManager dbm = DatabaseManager.inMemory("migrationcheck");
+        try {
+            expect(dbm.connectToBusiness(BUSINESS), "could not connect");
+            checkMigrated(dbm);
+
+            // Opening it again changes nothing
+            dbm.evictBusiness(BUSINESS);
+            expect(dbm.connectToBusiness(BUSINESS), "could not reconnect");
+            checkMigrated(dbm);
+
+            checkStalled(dbm);
+        } finally {
+            dbm.close();
+        }
+        System.out.println("Migration ok");
+    }
+
+    private static void makeVersion0Database() throws SQLException {
+        Connection raw = DriverManager.getConnection(BUSINESS_URL, "sa", "");
+        try {
+            Statement stmt = raw.createStatement();
+            for (String sql : VERSION_0_TABLES) {
+                stmt.execute(sql);
+            }
+            for (String[] booking : BOOKINGS) {
+                stmt.execute("INSERT INTO APPOINTMENT VALUES (DEFAULT, "
+                    +"TIMESTAMP '"+booking[1]+"', 0, "+booking[0]
+                    +", 'default_customer')");
+            }
+            stmt.close();
+        } finally {
+            raw.close();
+        }
+    }
+
+    private static void checkMigrated(DatabaseManager dbm) throws Exception {
+        dbm.commit();
+        Connection raw = DriverManager.getConnection(BUSINESS_URL, "sa", "");
+        try {
+            expect(ids(raw, "APPOINTMENT").equals(ids(0, 3, 4)),
+                "APPOINTMENT kept "+ids(raw, "APPOINTMENT"));
+            expect(ids(raw, "APPOINTMENT_CLASH").equals(ids(1, 2)),
+                "APPOINTMENT_CLASH has "+ids(raw, "APPOINTMENT_CLASH"));
+            int version = schemaVersion(raw);
+            expect(version == latestVersion(dbm),
+                "at schema version "+version+", a new database is at "
+                +latestVersion(dbm));
+        } finally {
+            raw.close();
+        }
+        // Step 4 gave the existing type the hour every booking used to take
+        AppointmentType type = dbm.getAppointmentType(0);
+        expect(type.getDuration().equals(Duration.ofMinutes(60)),
+            "type 0 takes "+type.getDuration());
+    }
+
+    /** A database whose migration fails part way is refused, even though
+      * the tables it has would do for loading it, and opens once the step
+      * can run */
+    private static void checkStalled(DatabaseManager dbm) throws Exception {
+        // Step 3 indexes AVAILABILITY, so it fails without that table
+        int stalled = 2;
+        int latest = latestVersion(dbm);
+        dbm.evictBusiness(BUSINESS);
+        Connection raw = DriverManager.getConnection(BUSINESS_URL, "sa", "");
+        try {
+            Statement stmt = raw.createStatement();
+            stmt.execute("ALTER TABLE AVAILABILITY RENAME TO HIDDEN");
+            stmt.execute("UPDATE SCHEMA_VERSION SET VERSION = "+stalled);
+            try {
+                dbm.connectToBusiness(BUSINESS);
+                throw new AssertionError("opened a database behind its schema");
+            } catch (SQLException expected) {
+            }
+            expect(schemaVersion(raw) == stalled,
+                "a failed step changed the schema version");
+
+            stmt.execute("ALTER TABLE HIDDEN RENAME TO AVAILABILITY");
+            stmt.close();
+        } finally {
+            raw.close();
+        }
+        expect(dbm.connectToBusiness(BUSINESS), "could not connect once fixed");
+        checkMigrated(dbm);
+        expect(latest == latestVersion(dbm), "latest version changed");
+    }
+
+    /** @return The schema version of a business database made new */
+    private static int latestVersion(DatabaseManager dbm) throws Exception {
+        String fresh = "fresh";
+        if (!dbm.isUsernameTaken(fresh)) {
+            dbm.registerBusiness(fresh, "password", "Fresh", "Owner",
+                "Address", "0420123456");
+        }
+        String current = dbm.getBusinessUsername();
+        expect(dbm.connectToBusiness(fresh), "could not make a new business");
+        if (current != null) {
+            expect(dbm.connectToBusiness(current), "could not switch back");
+        }
+        Connection raw = DriverManager.getConnection(
+            "jdbc:hsqldb:mem:db/"+fresh, "sa", "");
+        try {
+            return schemaVersion(raw);
+        } finally {
+            raw.close();
+        }
+    }
+
+    private static int schemaVersion(Connection raw) throws SQLException {
+        ResultSet rs = raw.createStatement().executeQuery(
+            "SELECT VERSION FROM SCHEMA_VERSION");
+        rs.next();
+        int version = rs.getInt(1);
+        rs.close();
+        return version;
+    }
+
+    private static ArrayList<Integer> ids(Connection raw, String table)
+        throws SQLException
+    {
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        ResultSet rs = raw.createStatement().executeQuery(
+            "SELECT APT_ID FROM "+table+" ORDER BY APT_ID");
+        while (rs.next()) {
+            ids.add(rs.getInt(1));
+        }
+        rs.close();
+        return ids;
+    }
+
+    private static ArrayList<Integer> ids(int... values) {
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for (int value : values) {
+            ids.add(value);
+        }
+        return ids;
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.jabst.jabs.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+import org.jabst.jabs.Business;
+import org.jabst.jabs.Customer;
+import org.jabst.jabs.DatabaseManager;
+
+/** Checks DatabaseManager.getCustomersPage and getBusinessesPage against an
+  * in-memory database: walking the pages returns every match once and in
+  * order, only the last page is short, and wildcards in a name prefix are
+  * matched literally.
+  * Run with: java org.jabst.jabs.test.PagingCheck
+  */
+public class PagingCheck {
+    private static final String GENERAL_URL = "jdbc:hsqldb:mem:pagingcheck";
+    /** Names given to the users made, in turn. Several share "Ann" and go on
+      * with a character LIKE would otherwise treat as a wildcard. */
+    private static final String[] NAMES = {
+        "Ann", "Annabel", "Ann_Lee", "Ann%Lee", "Ann\\Lee", "Anne", "Bob",
+        "bob", "Zed"
+    };
+    private static final String[] PREFIXES = {
+        null, "", "Ann", "Ann_", "Ann%", "Ann\\", "Ann_L", "Bob", "b", "d",
+        "Nobody"
+    };
+    private static final int[] PAGE_SIZES = { 1, 7, 50, 1000 };
+    private static final int CUSTOMERS = 130;
+    private static final int BUSINESSES = 40;
+
+    public static void main(String[] args) throws Exception {
+        DatabaseManager dbm = DatabaseManager.inMemory("pagingcheck");
+        try {
+            TreeMap<String, String> customers = new TreeMap<String, String>();
+            TreeMap<String, String> businesses = new TreeMap<String, String>();
+            customers.put("default_customer", "default customer");
+            businesses.put("default_business", "default business");
+            addUsers(dbm, customers, businesses);
+
+            for (String prefix : PREFIXES) {
+                for (int pageSize : PAGE_SIZES) {
+                    checkCustomers(dbm, customers, prefix, pageSize);
+                    checkBusinesses(dbm, businesses, prefix, pageSize);
+                }
+            }
+        } finally {
+            dbm.close();
+        }
+        System.out.println("Paging ok");
+    }
+
+    /** Inserts the users straight into the general database, which is much
+      * quicker than hashing a password for each */
+    private static void addUsers(DatabaseManager dbm,
+        TreeMap<String, String> customers, TreeMap<String, String> businesses)
+        throws SQLException
+    {
+        dbm.commit();
+        Connection raw = DriverManager.getConnection(GENERAL_URL, "sa", "");
+        try {
+            PreparedStatement credentials = raw.prepareStatement(
+                "INSERT INTO CREDENTIALS VALUES (?, X'00')");
+            PreparedStatement customer = raw.prepareStatement(
+                "INSERT INTO CUSTOMERS VALUES (?, ?, 'address', '0420123456')");
+            PreparedStatement business = raw.prepareStatement(
+                "INSERT INTO BUSINESS VALUES "
+               +"(?, ?, 'owner', 'address', '0420123456')");
+            for (int i = 0; i < CUSTOMERS + BUSINESSES; ++i) {
+                // Not inserted in order of username
+                String username = String.format("user%03d", (i * 37) % 1000);
+                String name = NAMES[i % NAMES.length]+" "+i;
+                credentials.setString(1, username);
+                credentials.executeUpdate();
+                PreparedStatement insert;
+                if (i < CUSTOMERS) {
+                    insert = customer;
+                    customers.put(username, name);
+                } else {
+                    insert = business;
+                    businesses.put(username, name);
+                }
+                insert.setString(1, username);
+                insert.setString(2, name);
+                insert.executeUpdate();
+            }
+        } finally {
+            raw.close();
+        }
+    }
+
+    private static void checkCustomers(DatabaseManager dbm,
+        TreeMap<String, String> customers, String prefix, int pageSize)
+        throws SQLException
+    {
+        ArrayList<String> found = new ArrayList<String>();
+        String after = null;
+        int pages = 0;
+        while (true) {
+            ArrayList<Customer> page =
+                dbm.getCustomersPage(after, prefix, pageSize);
+            // A page that does not move on would never end
+            expect(++pages <= customers.size() + 1, "customers did not end");
+            for (Customer customer : page) {
+                found.add(customer.getUsername());
+            }
+            if (page.size() < pageSize) {
+                break;
+            }
+            after = page.get(page.size() - 1).getUsername();
+        }
+        expectPages("customers", matching(customers, prefix), found, pages,
+            prefix, pageSize);
+    }
+
+    private static void checkBusinesses(DatabaseManager dbm,
+        TreeMap<String, String> businesses, String prefix, int pageSize)
+        throws SQLException
+    {
+        ArrayList<String> found = new ArrayList<String>();
+        String after = null;
+        int pages = 0;
+        while (true) {
+            ArrayList<Business> page =
+                dbm.getBusinessesPage(after, prefix, pageSize);
+            // A page that does not move on would never end
+            expect(++pages <= businesses.size() + 1, "businesses did not end");
+            for (Business business : page) {
+                found.add(business.getUsername());
+            }
+            if (page.size() < pageSize) {
+                break;
+            }
+            after = page.get(page.size() - 1).getUsername();
+        }
+        expectPages("businesses", matching(businesses, prefix), found, pages,
+            prefix, pageSize);
+    }
+
+    /** Every page before the last is full, so there is exactly one page
+      * more than the whole pages of matches */
+    private static void expectPages(String what, ArrayList<String> expected,
+        ArrayList<String> found, int pages, String prefix, int pageSize)
+    {
+        String run = what+" named \""+prefix+"\" by "+pageSize;
+        expect(found.equals(expected),
+            run+" gave "+found+", expected "+expected);
+        expect(pages == expected.size() / pageSize + 1,
+            run+" took "+pages+" pages for "+expected.size());
+    }
+
+    /** @return The usernames, in order, whose name starts with the prefix */
+    private static ArrayList<String> matching(TreeMap<String, String> users,
+        String prefix)
+    {
+        ArrayList<String> usernames = new ArrayList<String>();
+        for (String username : users.keySet()) {
+            if (prefix == null || users.get(username).startsWith(prefix)) {
+                usernames.add(username);
+            }
+        }
+        return usernames;
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
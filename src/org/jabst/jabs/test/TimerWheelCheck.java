@@ -0,0 +1,157 @@
+package org.jabst.jabs.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.jabst.jabs.util.TimerWheel;
+
+/** Checks util.TimerWheel: nothing expires before its deadline, even when
+  * it is laps ahead of the wheel, and everything expires within a tick of
+  * it. Run with: java org.jabst.jabs.test.TimerWheelCheck
+  */
+public class TimerWheelCheck {
+    private static final long TICK = 10;
+    private static final int WHEEL_SIZE = 8;
+    private static final int ITEMS = 2000;
+
+    public static void main(String[] args) {
+        checkLaps();
+        checkWithinTick();
+        checkCancel();
+        checkScheduleWhileExpiring();
+        checkAgainstModel(new Random(24));
+        System.out.println("TimerWheel ok");
+    }
+
+    /** An item many laps ahead shares a bucket with ticks passed on the
+      * way, but must stay until its own tick */
+    private static void checkLaps() {
+        TimerWheel<String> wheel = new TimerWheel<String>(TICK, WHEEL_SIZE, 0);
+        wheel.schedule("far", 1000);
+        ArrayList<String> expired = new ArrayList<String>();
+        for (long now = TICK; now < 1000; now += TICK) {
+            wheel.advance(now, expired::add);
+            expect(expired.isEmpty(), "expired early at "+now);
+        }
+        wheel.advance(1000, expired::add);
+        expect(expired.size() == 1, "not expired at its deadline");
+
+        // Jumping several laps at once still expires only what is due
+        wheel.schedule("due", 1200);
+        wheel.schedule("later", 5000);
+        expired.clear();
+        wheel.advance(1000 + TICK * WHEEL_SIZE * 3, expired::add);
+        expect(expired.size() == 1 && expired.get(0).equals("due"),
+            "jump expired "+expired);
+        expect(wheel.size() == 1, "size "+wheel.size()+", expected 1");
+    }
+
+    /** Items expire on the first advance at or after their deadline's tick,
+      * and a deadline already passed waits for the next tick */
+    private static void checkWithinTick() {
+        TimerWheel<String> wheel = new TimerWheel<String>(TICK, WHEEL_SIZE, 0);
+        ArrayList<String> expired = new ArrayList<String>();
+        wheel.schedule("mid", 15);
+        wheel.advance(14, expired::add);
+        expect(expired.isEmpty(), "expired before its deadline");
+        wheel.advance(20, expired::add);
+        expect(expired.size() == 1, "not expired a tick after its deadline");
+
+        wheel.schedule("past", 5);
+        wheel.advance(29, expired::add);
+        expect(expired.size() == 1, "a passed deadline expired in its tick");
+        wheel.advance(30, expired::add);
+        expect(expired.size() == 2, "a passed deadline never expired");
+    }
+
+    private static void checkCancel() {
+        TimerWheel<String> wheel = new TimerWheel<String>(TICK, WHEEL_SIZE, 0);
+        TimerWheel<String>.Timeout timeout = wheel.schedule("cancelled", 50);
+        wheel.schedule("kept", 50);
+        expect(wheel.cancel(timeout), "cancel failed");
+        expect(!wheel.cancel(timeout), "cancelled twice");
+        expect(!timeout.isActive(), "cancelled timeout still active");
+        ArrayList<String> expired = new ArrayList<String>();
+        wheel.advance(100, expired::add);
+        expect(expired.size() == 1 && expired.get(0).equals("kept"),
+            "expired "+expired);
+        expect(wheel.isEmpty(), "not empty");
+    }
+
+    /** The callback may put items back on the wheel */
+    private static void checkScheduleWhileExpiring() {
+        final TimerWheel<Integer> wheel =
+            new TimerWheel<Integer>(TICK, WHEEL_SIZE, 0);
+        final int[] calls = { 0 };
+        wheel.schedule(0, 10);
+        for (long now = TICK; now <= 100; now += TICK) {
+            final long at = now;
+            wheel.advance(now, n -> {
+                ++calls[0];
+                wheel.schedule(n + 1, at + TICK);
+            });
+        }
+        expect(calls[0] == 10, calls[0]+" expiries, expected 10");
+        expect(wheel.size() == 1, "size "+wheel.size()+", expected 1");
+    }
+
+    /** Schedules and cancels random deadlines up to a few laps ahead and
+      * advances by random steps. Each item must expire on the first advance
+      * whose tick reaches its deadline's tick, or the tick after the one it
+      * was scheduled in if that is later. */
+    private static void checkAgainstModel(Random random) {
+        TimerWheel<Integer> wheel = new TimerWheel<Integer>(TICK, WHEEL_SIZE, 0);
+        long span = TICK * WHEEL_SIZE * 4;
+        long[] deadlines = new long[ITEMS];
+        long[] dueTicks = new long[ITEMS];
+        ArrayList<TimerWheel<Integer>.Timeout> timeouts =
+            new ArrayList<TimerWheel<Integer>.Timeout>();
+        HashSet<Integer> pending = new HashSet<Integer>();
+        long now = 0;
+        int scheduled = 0;
+        while (scheduled < ITEMS || !pending.isEmpty()) {
+            for (int k = random.nextInt(5); k > 0 && scheduled < ITEMS; --k) {
+                deadlines[scheduled] = now + random.nextInt((int)span);
+                dueTicks[scheduled] = Math.max(
+                    ceilDiv(deadlines[scheduled], TICK), now / TICK + 1);
+                timeouts.add(wheel.schedule(scheduled, deadlines[scheduled]));
+                pending.add(scheduled);
+                ++scheduled;
+            }
+            if (scheduled > 0 && random.nextInt(10) == 0) {
+                int victim = random.nextInt(scheduled);
+                expect(wheel.cancel(timeouts.get(victim))
+                    == pending.remove(victim), "cancel "+victim);
+            }
+            now += random.nextInt((int)(TICK * 3));
+            final long at = now;
+            HashSet<Integer> due = new HashSet<Integer>();
+            for (int item : pending) {
+                if (at / TICK >= dueTicks[item]) {
+                    due.add(item);
+                }
+            }
+            final HashSet<Integer> expired = new HashSet<Integer>();
+            wheel.advance(now, item -> {
+                expect(at >= deadlines[item],
+                    item+" expired early at "+at+", deadline "+deadlines[item]);
+                expired.add(item);
+            });
+            expect(expired.equals(due),
+                "at "+now+" expired "+expired+", expected "+due);
+            pending.removeAll(expired);
+            expect(wheel.size() == pending.size(), "size at "+now);
+        }
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.jabst.jabs.test;
+
+import java.util.Random;
+
+import org.jabst.jabs.Timetable;
+import org.jabst.jabs.Timetable.CellStatus;
+
+/** Checks that Timetable's word-at-a-time count, union and intersect agree
+  * with doing the same one cell at a time, on sizes whose last word is full,
+  * partly filled, or the only one.
+  * Run with: java org.jabst.jabs.test.TimetableCheck
+  */
+public class TimetableCheck {
+    /** Days and hours of each size checked. 32 cells fill a word. */
+    private static final int[][] SIZES = {
+        { 7, 8 }, { 4, 8 }, { 3, 5 }, { 6, 3 }, { 7, 24 }, { 1, 1 }
+    };
+    private static final int RUNS = 200;
+    private static final CellStatus[] STATUSES = CellStatus.values();
+
+    public static void main(String[] args) {
+        Random random = new Random(12);
+        for (int[] size : SIZES) {
+            checkFill(size[0], size[1]);
+            for (int run = 0; run < RUNS; ++run) {
+                checkOperations(size[0], size[1], random);
+            }
+        }
+        System.out.println("Timetable ok");
+    }
+
+    /** Counts must not include the unused bits after the last cell, which
+      * read as FREE */
+    private static void checkFill(int days, int hours) {
+        Timetable table = new Timetable(days, hours);
+        int cells = days * hours;
+        expect(table.count(CellStatus.FREE) == cells,
+            days+"x"+hours+" new table counts "+table.count(CellStatus.FREE)
+            +" FREE");
+        for (CellStatus status : STATUSES) {
+            table.fill(status);
+            for (CellStatus other : STATUSES) {
+                int expected = other == status ? cells : 0;
+                expect(table.count(other) == expected,
+                    days+"x"+hours+" filled with "+status+" counts "
+                    +table.count(other)+" "+other);
+            }
+        }
+        // Filling with UNAVAILABLE sets every bit of the used cells; a
+        // union must still leave the unused bits alone
+        Timetable other = new Timetable(days, hours);
+        other.fill(CellStatus.UNAVAILABLE);
+        table.fill(CellStatus.FREE);
+        table.union(other, CellStatus.UNAVAILABLE);
+        expect(table.count(CellStatus.UNAVAILABLE) == cells
+            && table.count(CellStatus.FREE) == 0,
+            days+"x"+hours+" union touched unused bits");
+    }
+
+    private static void checkOperations(int days, int hours, Random random) {
+        Timetable a = randomTable(days, hours, random);
+        Timetable b = randomTable(days, hours, random);
+        CellStatus status = STATUSES[random.nextInt(STATUSES.length)];
+
+        for (CellStatus counted : STATUSES) {
+            expect(a.count(counted) == countCells(a, counted),
+                days+"x"+hours+" count "+counted);
+        }
+
+        CellStatus[][] expected = cellsOf(a);
+        for (int day = 0; day < days; ++day) {
+            for (int hour = 0; hour < hours; ++hour) {
+                if (b.get(day, hour) == status) {
+                    expected[day][hour] = status;
+                }
+            }
+        }
+        Timetable union = copy(a);
+        union.union(b, status);
+        expectCells(union, expected, "union "+status);
+
+        expected = cellsOf(a);
+        for (int day = 0; day < days; ++day) {
+            for (int hour = 0; hour < hours; ++hour) {
+                if (expected[day][hour] == status
+                    && b.get(day, hour) != status)
+                {
+                    expected[day][hour] = CellStatus.FREE;
+                }
+            }
+        }
+        Timetable intersection = copy(a);
+        intersection.intersect(b, status);
+        expectCells(intersection, expected, "intersect "+status);
+    }
+
+    private static Timetable randomTable(int days, int hours, Random random) {
+        Timetable table = new Timetable(days, hours);
+        for (int day = 0; day < days; ++day) {
+            for (int hour = 0; hour < hours; ++hour) {
+                table.set(day, hour, STATUSES[random.nextInt(STATUSES.length)]);
+            }
+        }
+        return table;
+    }
+
+    private static Timetable copy(Timetable table) {
+        Timetable copy = new Timetable(table.days, table.hours);
+        for (int day = 0; day < table.days; ++day) {
+            for (int hour = 0; hour < table.hours; ++hour) {
+                copy.set(day, hour, table.get(day, hour));
+            }
+        }
+        return copy;
+    }
+
+    private static CellStatus[][] cellsOf(Timetable table) {
+        CellStatus[][] cells = new CellStatus[table.days][table.hours];
+        for (int day = 0; day < table.days; ++day) {
+            for (int hour = 0; hour < table.hours; ++hour) {
+                cells[day][hour] = table.table.get(day).get(hour);
+            }
+        }
+        return cells;
+    }
+
+    private static int countCells(Timetable table, CellStatus status) {
+        int count = 0;
+        for (int day = 0; day < table.days; ++day) {
+            for (int hour = 0; hour < table.hours; ++hour) {
+                if (table.get(day, hour) == status) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void expectCells(Timetable table, CellStatus[][] expected,
+        String operation)
+    {
+        for (int day = 0; day < table.days; ++day) {
+            for (int hour = 0; hour < table.hours; ++hour) {
+                expect(table.get(day, hour) == expected[day][hour],
+                    table.days+"x"+table.hours+" "+operation+" at ("+day+", "
+                    +hour+"): "+table.get(day, hour)+", expected "
+                    +expected[day][hour]);
+            }
+        }
+        for (CellStatus status : STATUSES) {
+            int count = 0;
+            for (CellStatus[] row : expected) {
+                for (CellStatus cell : row) {
+                    if (cell == status) {
+                        ++count;
+                    }
+                }
+            }
+            expect(table.count(status) == count,
+                operation+" then count "+status);
+        }
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.jabst.jabs.test;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.jabst.jabs.WeekDate;
+import org.jabst.jabs.util.WeekDateSet;
+
+/** Checks util.WeekDateSet, in particular that removing a WeekDate from the
+  * middle of a probe run shifts the rest back so none are lost.
+  * Run with: java org.jabst.jabs.test.WeekDateSetCheck
+  */
+public class WeekDateSetCheck {
+    private static final int RUNS = 200;
+    private static final int OPS_PER_RUN = 400;
+
+    public static void main(String[] args) {
+        checkWholeWeek(new Random(13));
+        checkAgainstModel(new Random(130));
+        System.out.println("WeekDateSet ok");
+    }
+
+    /** Fills a set made too small with every hourly slot of the week, so it
+      * grows and has long probe runs, then removes them in random order,
+      * checking every slot after each removal */
+    private static void checkWholeWeek(Random random) {
+        ArrayList<Integer> slots = new ArrayList<Integer>();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            for (int hour = 0; hour < 24; ++hour) {
+                slots.add(WeekDate.ofHour(day, hour).getPacked());
+            }
+        }
+        WeekDateSet set = new WeekDateSet(1);
+        for (int packed : slots) {
+            expect(set.add(packed), "add "+WeekDate.ofPacked(packed));
+            expect(!set.add(packed), "added twice "+WeekDate.ofPacked(packed));
+        }
+        expect(set.size() == slots.size(), "size "+set.size());
+
+        Collections.shuffle(slots, random);
+        HashSet<Integer> left = new HashSet<Integer>(slots);
+        for (int packed : slots) {
+            expect(set.remove(packed), "remove "+WeekDate.ofPacked(packed));
+            expect(!set.remove(packed), "removed twice");
+            left.remove(packed);
+            for (int other : slots) {
+                if (set.contains(other) != left.contains(other)) {
+                    throw new AssertionError("contains "
+                        +WeekDate.ofPacked(other)+" after removing "
+                        +WeekDate.ofPacked(packed));
+                }
+            }
+        }
+        expect(set.isEmpty(), "not empty");
+    }
+
+    /** Adds, removes and looks up random WeekDates at any second of the day,
+      * comparing with a HashSet */
+    private static void checkAgainstModel(Random random) {
+        for (int run = 0; run < RUNS; ++run) {
+            WeekDateSet set = new WeekDateSet();
+            HashSet<Integer> model = new HashSet<Integer>();
+            // Few distinct values, so removes often hit and runs collide
+            int range = 16 + random.nextInt(64);
+            for (int op = 0; op < OPS_PER_RUN; ++op) {
+                WeekDate wd = new WeekDate(
+                    DayOfWeek.of(1 + random.nextInt(7)),
+                    random.nextInt(range) * 900);
+                int packed = wd.getPacked();
+                boolean same;
+                String operation;
+                switch (random.nextInt(3)) {
+                case 0:
+                    same = set.add(wd) == model.add(packed);
+                    operation = "add";
+                    break;
+                case 1:
+                    same = set.remove(wd) == model.remove(packed);
+                    operation = "remove";
+                    break;
+                default:
+                    same = set.contains(wd) == model.contains(packed);
+                    operation = "contains";
+                }
+                // Only formats the WeekDate if the check fails
+                if (!same || set.size() != model.size()) {
+                    throw new AssertionError(operation+" "+wd
+                        +" differs from a HashSet");
+                }
+            }
+            for (int packed : set.toArray()) {
+                expect(model.remove(packed), "extra "+WeekDate.ofPacked(packed));
+            }
+            expect(model.isEmpty(), "missing "+model);
+        }
+    }
+
+    private static void expect(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.jabst.jabs.util;
+
+/** A set of strings that can say for certain that a string was never added,
+  * using a few bits per string however long the strings are. It may wrongly
+  * say a string was added, about falsePositiveRate of the time once
+  * expectedInsertions strings are in it, and more often after that.
+  * Not thread safe.
+  */
+public class BloomFilter {
+    /** The most bits a filter has, 256 MB */
+    private static final long MAX_BITS = 1L << 31;
+    /** The most bits each string sets, however roomy the filter is */
+    private static final int MAX_HASHES = 16;
+
+    private final long[] bits;
+    /** How many bits there are, a power of two */
+    private final long bitCount;
+    /** How many bits each string sets */
+    private final int hashCount;
+
+    /** @param expectedInsertions How many strings are expected to be added
+      * @param falsePositiveRate How often mightContain should wrongly return
+      * true once they are, between 0 and 1 exclusive
+      */
+    public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                "False positive rate must be between 0 and 1, was "
+                +falsePositiveRate);
+        }
+        int n = Math.max(expectedInsertions, 1);
+        // The optimal size is -n ln p / (ln 2)^2 bits with (m/n) ln 2 hashes
+        double optimalBits = -n * Math.log(falsePositiveRate)
+            / (Math.log(2) * Math.log(2));
+        long size = Long.highestOneBit(Math.max((long)optimalBits, 64) - 1) << 1;
+        this.bits = new long[(int)(Math.min(size, MAX_BITS) / 64)];
+        this.bitCount = (long)bits.length * 64;
+        this.hashCount = (int)Math.max(1, Math.min(MAX_HASHES,
+            Math.round((double)bitCount / n * Math.log(2))));
+    }
+
+    public void add(CharSequence s) {
+        long h1 = hash(s, 0x9E3779B97F4A7C15L);
+        long h2 = hash(s, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashCount; ++i) {
+            long bit = (h1 + i * h2) & (bitCount - 1);
+            bits[(int)(bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /** @return false if s was certainly never added; true if it probably was
+      */
+    public boolean mightContain(CharSequence s) {
+        long h1 = hash(s, 0x9E3779B97F4A7C15L);
+        long h2 = hash(s, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashCount; ++i) {
+            long bit = (h1 + i * h2) & (bitCount - 1);
+            if ((bits[(int)(bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return How many bits each string sets */
+    public int getHashCount() { return hashCount; }
+
+    /** @return How many bits the filter has */
+    public long getBitCount() { return bitCount; }
+
+    /** A 64 bit hash of the chars of s, different for each seed */
+    private static long hash(CharSequence s, long seed) {
+        long h = seed ^ s.length();
+        for (int i = 0; i < s.length(); ++i) {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        }
+        // Mix so that every input bit affects every output bit
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -52,7 +52,8 @@ public final class DateTableConversion {
             
             int cellIdx = hoursCalendar.get(i).get(Calendar.HOUR_OF_DAY)-startingHour;
             
-            if (cellIdx < 0 || cellIdx > hoursInADay) {
+            if (cellIdx < 0 || cellIdx >= Math.min(hoursInADay, table.hours)
+                || getting >= table.days) {
                 System.out.println(
                     "Discarding out of hours entry for employee hours:"
                     +hoursCalendar.get(i).toString()
@@ -60,7 +61,7 @@ public final class DateTableConversion {
                 continue;
             }
             System.out.println("setting cell: " + cellIdx);
-            table.table.get(getting).set(cellIdx, Timetable.CellStatus.BOOKED_BY_YOU);
+            table.set(getting, cellIdx, Timetable.CellStatus.BOOKED_BY_YOU);
         }
         System.out.println("end of createTableFromDates");
         // TODO: clean up all these println statements
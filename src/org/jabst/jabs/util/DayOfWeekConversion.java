@@ -54,7 +54,7 @@ public class DayOfWeekConversion {
       */
     public static WeekDate cal2wd (Calendar c) {
         /* WeekDate(DayOfWeek, timeOfDay */
-        return new WeekDate (
+        return WeekDate.of (
             DayOfWeek.of(
                 DayOfWeekConversion.cal2dow(c.get(Calendar.DAY_OF_WEEK))
             ),
@@ -1,38 +1,156 @@
 package org.jabst.jabs.util;
 
 // MessageDigest for SHA256 hash
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+/** Hashes passwords and writes hashes as text.
+  * Each thread keeps its own MessageDigest and encoding buffer, so hashing
+  * into a caller's buffer allocates nothing once the thread has hashed a
+  * message at least as long.
+  */
 public class Digest {
+    /** The length of a SHA-256 digest in bytes */
+    public static final int SHA256_LENGTH = 32;
 
-    /** Takes the SHA-256 digest of the String message
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The digest and UTF-8 buffer of each thread */
+    private static final ThreadLocal<Sha256> SHA256 =
+        ThreadLocal.withInitial(Sha256::new);
+
+    /** Takes the SHA-256 digest of the String message, encoded as UTF-8
       * @param message The message to take the digest of
       * @return A byte[] of the digest, of fixed length 32 bytes
       */
     public static byte[] sha256(String message) {
-        MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            System.err.println("No such algorith as SHA-256?");
-            e.printStackTrace(System.err);
-            return null;
+        byte[] digest = new byte[SHA256_LENGTH];
+        sha256(message, digest, 0);
+        return digest;
+    }
+
+    /** Takes the SHA-256 digest of the String message in the platform's
+      * default encoding, as sha256 did before it encoded as UTF-8. Only for
+      * checking hashes stored back then: the two differ for messages that
+      * are not ASCII on platforms whose default encoding is not UTF-8.
+      * @param message The message to take the digest of
+      * @return A byte[] of the digest, of fixed length 32 bytes
+      */
+    public static byte[] legacySha256(String message) {
+        return SHA256.get().md.digest(message.getBytes());
+    }
+
+    /** Takes the SHA-256 digest of the message, encoded as UTF-8, into out
+      * @param message The message to take the digest of
+      * @param out Receives the SHA256_LENGTH bytes of the digest
+      * @param offset Where in out the digest starts
+      * @throws IndexOutOfBoundsException If the digest does not fit in out
+      */
+    public static void sha256(CharSequence message, byte[] out, int offset) {
+        if (offset < 0 || out.length - offset < SHA256_LENGTH) {
+            throw new IndexOutOfBoundsException(
+                "No room for a digest at "+offset+" in "+out.length+" bytes");
         }
-        return md.digest(message.getBytes());
+        SHA256.get().digest(message, out, offset);
     }
 
     /**
-     * Returns a String representing the digest given in a byte array
-     * Not currently used
+     * Returns a String representing the digest given in a byte array,
+     * two lowercase hex digits per byte
      * @param digest the digest to convert to a hexadecimal string
      * @return A string representing the byte[] in hexadecimal text
      */
     public static String digestToHexString(byte[] digest) {
-        StringBuffer s = new StringBuffer();
-        for (int i = 0; i < digest.length; ++i) {
-            s.append(String.format("%x", digest[i]));
+        char[] hex = new char[digest.length * 2];
+        toHex(digest, 0, digest.length, hex, 0);
+        return new String(hex);
+    }
+
+    /** Writes bytes as two lowercase hex digits each into out
+      * @param bytes The bytes to write
+      * @param from The first byte to write
+      * @param length How many bytes to write
+      * @param out Receives length * 2 chars
+      * @param offset Where in out the text starts
+      */
+    public static void toHex(byte[] bytes, int from, int length,
+        char[] out, int offset)
+    {
+        for (int i = from; i < from + length; ++i) {
+            out[offset++] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            out[offset++] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+    }
+
+    /** One thread's SHA-256 MessageDigest and the buffer it encodes
+      * messages into */
+    private static class Sha256 {
+        private final MessageDigest md;
+        private byte[] utf8 = new byte[64];
+
+        Sha256() {
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException("No SHA-256 MessageDigest", e);
+            }
+        }
+
+        void digest(CharSequence message, byte[] out, int offset) {
+            int length = encodeUtf8(message);
+            md.update(utf8, 0, length);
+            try {
+                md.digest(out, offset, SHA256_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                md.reset();
+            }
+        }
+
+        /** Encodes the message as UTF-8 into utf8. Unpaired surrogates
+          * become '?', as in String.getBytes.
+          * @return How many bytes were written */
+        private int encodeUtf8(CharSequence message) {
+            int chars = message.length();
+            // No char takes more than 3 bytes; a surrogate pair takes 4
+            if (utf8.length < chars * 3) {
+                utf8 = new byte[chars * 3];
+            }
+            byte[] buf = utf8;
+            int n = 0;
+            for (int i = 0; i < chars; ++i) {
+                char c = message.charAt(i);
+                if (c < 0x80) {
+                    buf[n++] = (byte)c;
+                }
+                else if (c < 0x800) {
+                    buf[n++] = (byte)(0xc0 | (c >> 6));
+                    buf[n++] = (byte)(0x80 | (c & 0x3f));
+                }
+                else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < chars
+                        && Character.isLowSurrogate(message.charAt(i + 1)))
+                    {
+                        int cp = Character.toCodePoint(c, message.charAt(++i));
+                        buf[n++] = (byte)(0xf0 | (cp >> 18));
+                        buf[n++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+                        buf[n++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+                        buf[n++] = (byte)(0x80 | (cp & 0x3f));
+                    }
+                    else {
+                        buf[n++] = (byte)'?';
+                    }
+                }
+                else {
+                    buf[n++] = (byte)(0xe0 | (c >> 12));
+                    buf[n++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+                    buf[n++] = (byte)(0x80 | (c & 0x3f));
+                }
+            }
+            return n;
         }
-        return s.toString();
     }
-}
\ No newline at end of file
+}
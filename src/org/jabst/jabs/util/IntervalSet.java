@@ -0,0 +1,89 @@
+package org.jabst.jabs.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A set of disjoint half-open ranges [start, end) of longs, such as the
+  * times an employee is booked in milliseconds. The ranges are kept in a
+  * TreeMap by start, so adding, removing and asking whether a range
+  * overlaps any of them all take O(log n).
+  * Not thread safe.
+  */
+public class IntervalSet {
+    /** The end of each range, by its start */
+    private final TreeMap<Long, Long> ranges = new TreeMap<Long, Long>();
+
+    /** @return Whether [start, end) overlaps any range in the set. Ranges
+      * that only touch, one ending where the other starts, do not overlap.
+      */
+    public boolean overlaps(long start, long end) {
+        if (start >= end) {
+            return false;
+        }
+        Map.Entry<Long, Long> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() > start) {
+            return true;
+        }
+        Long after = ranges.higherKey(start);
+        return after != null && after < end;
+    }
+
+    /** Adds [start, end) if it overlaps no range in the set
+      * @return Whether it was added
+      * @throws IllegalArgumentException If start is not before end
+      */
+    public boolean add(long start, long end) {
+        checkRange(start, end);
+        if (overlaps(start, end)) {
+            return false;
+        }
+        ranges.put(start, end);
+        return true;
+    }
+
+    /** Adds [start, end), joining it with any ranges it overlaps into one.
+      * Used for times that may already overlap, like appointments booked
+      * before overlaps were checked.
+      * @throws IllegalArgumentException If start is not before end
+      */
+    public void merge(long start, long end) {
+        checkRange(start, end);
+        Map.Entry<Long, Long> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() > start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+        while (next != null && next.getKey() < end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+            next = ranges.higherEntry(next.getKey());
+        }
+        ranges.put(start, end);
+    }
+
+    /** Removes the range [start, end), if it is in the set exactly
+      * @return Whether it was removed
+      */
+    public boolean remove(long start, long end) {
+        Long oldEnd = ranges.get(start);
+        if (oldEnd == null || oldEnd != end) {
+            return false;
+        }
+        ranges.remove(start);
+        return true;
+    }
+
+    public int size() { return ranges.size(); }
+
+    public boolean isEmpty() { return ranges.isEmpty(); }
+
+    public void clear() { ranges.clear(); }
+
+    private static void checkRange(long start, long end) {
+        if (start >= end) {
+            throw new IllegalArgumentException(
+                "Empty range ["+start+", "+end+")");
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.jabst.jabs.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A map that holds at most capacity entries. When full, adding another
+  * entry drops the one that was least recently read or written.
+  * Not thread safe.
+  */
+public class LruCache<K, V> extends LinkedHashMap<K, V> {
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+
+    /** Creates an empty cache
+      * @param capacity The most entries to hold. Must be at least 1.
+      */
+    public LruCache(int capacity) {
+        super(16, 0.75f, true);
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                "Cache capacity must be at least 1, was "+capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() { return capacity; }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > capacity;
+    }
+}
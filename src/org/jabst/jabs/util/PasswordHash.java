@@ -0,0 +1,124 @@
+package org.jabst.jabs.util;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/** Hashes passwords for storage and checks passwords against stored hashes.
+  * A stored hash is one of:
+  * <ul>
+  * <li>Version 0: the 32 byte unsalted SHA-256 of the password, as written
+  *     by earlier versions: of its UTF-8 encoding (see Digest.sha256), or
+  *     at first of the platform's default encoding (Digest.legacySha256).
+  *     Only ever checked, never written.</li>
+  * <li>Version 1: the byte 1, the iteration count as a 4 byte int, a 16 byte
+  *     salt, then the 32 byte PBKDF2-HMAC-SHA256 of the password.</li>
+  * </ul>
+  * The iteration count sets how long hashing takes. It is chosen with
+  * calibrate, and hashes made with far fewer iterations need upgrading.
+  */
+public class PasswordHash {
+    public static final byte VERSION_PBKDF2 = 1;
+    /** The longest stored hash, which the PASSWORD column must hold */
+    public static final int MAX_LENGTH = 1 + 4 + 16 + 32;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+    /** Used when calibrate has not been called */
+    private static final int DEFAULT_ITERATIONS = 100000;
+    private static final int MIN_ITERATIONS = 10000;
+    private static final int MAX_ITERATIONS = 10000000;
+
+    private static final SecureRandom random = new SecureRandom();
+    private static volatile int iterations = DEFAULT_ITERATIONS;
+
+    /** Times hashing on this machine and sets the iteration count so that
+      * hashing a password takes about targetMillis
+      * @return The iteration count chosen
+      */
+    public static int calibrate(long targetMillis) {
+        byte[] salt = new byte[SALT_LENGTH];
+        // The first run warms up the JIT and the provider
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 3; ++run) {
+            long start = System.nanoTime();
+            pbkdf2("calibration", salt, MIN_ITERATIONS);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long chosen = MIN_ITERATIONS * (targetMillis * 1000000L) / Math.max(best, 1);
+        iterations = (int)Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, chosen));
+        return iterations;
+    }
+
+    /** @return The iteration count new hashes are made with */
+    public static int getIterations() {
+        return iterations;
+    }
+
+    /** @return A new salted hash of the password, in the latest version */
+    public static byte[] hash(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        int rounds = iterations;
+        return ByteBuffer.allocate(MAX_LENGTH)
+            .put(VERSION_PBKDF2)
+            .putInt(rounds)
+            .put(salt)
+            .put(pbkdf2(password, salt, rounds))
+            .array();
+    }
+
+    /** Checks the password against a stored hash of any version. Takes the
+      * same time whichever byte of the hash differs.
+      * @return Whether stored is a hash of the password
+      */
+    public static boolean verify(String password, byte[] stored) {
+        if (stored == null) {
+            return false;
+        }
+        if (stored.length == Digest.SHA256_LENGTH) {
+            return MessageDigest.isEqual(Digest.sha256(password), stored)
+                || MessageDigest.isEqual(Digest.legacySha256(password), stored);
+        }
+        if (stored.length != MAX_LENGTH || stored[0] != VERSION_PBKDF2) {
+            return false;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(stored, 1, MAX_LENGTH - 1);
+        int rounds = buf.getInt();
+        if (rounds < 1) {
+            return false;
+        }
+        byte[] salt = new byte[SALT_LENGTH];
+        buf.get(salt);
+        byte[] expected = new byte[HASH_LENGTH];
+        buf.get(expected);
+        return MessageDigest.isEqual(pbkdf2(password, salt, rounds), expected);
+    }
+
+    /** @return Whether stored should be replaced with a new hash once the
+      * password is known: it is an older version, or uses less than half the
+      * iterations new hashes do. The slack stops hashes being remade every
+      * time calibrate's timing varies a little. */
+    public static boolean needsUpgrade(byte[] stored) {
+        return stored.length != MAX_LENGTH || stored[0] != VERSION_PBKDF2
+            || ByteBuffer.wrap(stored, 1, 4).getInt() < iterations / 2;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int rounds) {
+        PBEKeySpec spec = new PBEKeySpec(
+            password.toCharArray(), salt, rounds, HASH_LENGTH * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM)
+                .generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // Provided by every JRE since Java 8
+            throw new IllegalStateException("No "+ALGORITHM, e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.jabst.jabs.util;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/** Expires items at a deadline without a scheduled task for each one.
+  * Time is cut into ticks, and each item goes in the bucket for the tick
+  * its deadline falls in, modulo the number of buckets. Buckets are linked
+  * lists, so scheduling and cancelling take O(1). Advancing the wheel only
+  * visits the buckets of the ticks passed, and only expires the items in
+  * them whose deadline has come; the rest are a lap or more ahead.
+  * Items expire up to one tick after their deadline, never early; an item
+  * whose deadline was already passed by the last advance expires in the
+  * tick after that one.
+  * Nothing runs on its own: call advance with the time to expire items.
+  * Not thread safe.
+  */
+public class TimerWheel<T> {
+    /** An item on the wheel, for cancelling it */
+    public final class Timeout {
+        private final T item;
+        private final long deadline;
+        /** The tick the deadline falls in */
+        private final long tick;
+        private Timeout prev;
+        private Timeout next;
+        /** Whether it is still on the wheel */
+        private boolean active = true;
+
+        private Timeout(T item, long deadline, long tick) {
+            this.item = item;
+            this.deadline = deadline;
+            this.tick = tick;
+        }
+
+        public T getItem() { return item; }
+
+        public long getDeadline() { return deadline; }
+
+        /** @return Whether it has neither expired nor been cancelled */
+        public boolean isActive() { return active; }
+    }
+
+    private final long tickMillis;
+    /** The first item of each bucket */
+    private final Timeout[] buckets;
+    /** The last tick advance has expired items for */
+    private long currentTick;
+    private int size;
+
+    /** @param tickMillis How long each tick is. Items expire up to this
+      * late.
+      * @param wheelSize How many buckets there are, rounded up to a power of
+      * two. Deadlines up to tickMillis * wheelSize ahead are spread out
+      * without laps.
+      * @param now The current time
+      */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int wheelSize, long now) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException(
+                "Tick and wheel size must be positive, were "
+                +tickMillis+" and "+wheelSize);
+        }
+        this.tickMillis = tickMillis;
+        int count = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.buckets = (Timeout[])new TimerWheel<?>.Timeout[count];
+        this.currentTick = now / tickMillis;
+    }
+
+    /** Puts the item on the wheel
+      * @param deadline When it expires. A deadline already passed expires on
+      * the first advance into a later tick.
+      * @return The item's Timeout, for cancelling it
+      */
+    public Timeout schedule(T item, long deadline) {
+        // Deadlines in a tick already expired go in the next one
+        long tick = Math.max(ceilDiv(deadline, tickMillis), currentTick + 1);
+        Timeout timeout = new Timeout(item, deadline, tick);
+        int bucket = bucketOf(tick);
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        ++size;
+        return timeout;
+    }
+
+    /** Takes the item off the wheel without expiring it
+      * @return Whether it was on the wheel; false if it had already expired
+      * or been cancelled
+      */
+    public boolean cancel(Timeout timeout) {
+        if (!timeout.active) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    /** Expires every item whose deadline is at or before now, in no
+      * particular order
+      * @param expired Called with each expired item, after it has been
+      * taken off the wheel
+      * @return How many items expired
+      */
+    public int advance(long now, Consumer<? super T> expired) {
+        long target = now / tickMillis;
+        if (target <= currentTick) {
+            return 0;
+        }
+        // Going round more than once would visit the same buckets again
+        long from = Math.max(currentTick + 1, target - buckets.length + 1);
+        ArrayList<T> due = new ArrayList<T>();
+        for (long tick = from; tick <= target; ++tick) {
+            Timeout timeout = buckets[bucketOf(tick)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.tick <= target) {
+                    unlink(timeout);
+                    due.add(timeout.item);
+                }
+                timeout = next;
+            }
+        }
+        currentTick = target;
+        // Called once the buckets are walked, so expired may use the wheel
+        for (T item : due) {
+            expired.accept(item);
+        }
+        return due.size();
+    }
+
+    /** @return How many items are on the wheel */
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[bucketOf(timeout.tick)] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.active = false;
+        --size;
+    }
+
+    private int bucketOf(long tick) {
+        return (int)(tick & (buckets.length - 1));
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
@@ -0,0 +1,156 @@
+package org.jabst.jabs.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import org.jabst.jabs.WeekDate;
+
+/** A set of WeekDates, stored as their packed ints in an open addressed
+  * hash table. Adding and looking up by day and time allocates nothing.
+  * Not thread safe.
+  */
+public class WeekDateSet {
+    /** Marks an empty slot. Packed WeekDates are never 0. */
+    private static final int EMPTY = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private int size;
+
+    public WeekDateSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /** @param expected How many WeekDates the set is expected to hold */
+    public WeekDateSet(int expected) {
+        keys = new int[tableSize(expected)];
+    }
+
+    public boolean add(WeekDate wd) {
+        return add(wd.getPacked());
+    }
+
+    /** @param packed A packed WeekDate, see WeekDate.getPacked
+      * @return Whether it was not already in the set */
+    public boolean add(int packed) {
+        if (packed == EMPTY) {
+            throw new IllegalArgumentException("Not a packed WeekDate: 0");
+        }
+        int slot = find(keys, packed);
+        if (keys[slot] == packed) {
+            return false;
+        }
+        keys[slot] = packed;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    public boolean contains(WeekDate wd) {
+        return contains(wd.getPacked());
+    }
+
+    /** @param day DayOfWeek.getValue(), 1 (Monday) to 7 (Sunday)
+      * @param timeOfDay Seconds since midnight */
+    public boolean contains(int day, int timeOfDay) {
+        return contains(WeekDate.pack(day, timeOfDay));
+    }
+
+    public boolean contains(int packed) {
+        return packed != EMPTY && keys[find(keys, packed)] == packed;
+    }
+
+    public boolean remove(WeekDate wd) {
+        return remove(wd.getPacked());
+    }
+
+    /** @return Whether the packed WeekDate was in the set */
+    public boolean remove(int packed) {
+        if (packed == EMPTY) {
+            return false;
+        }
+        int slot = find(keys, packed);
+        if (keys[slot] != packed) {
+            return false;
+        }
+        // Shift later entries of the probe run back so none are cut off
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int i = (slot + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            int home = hash(keys[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+        --size;
+        return true;
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /** Calls action with each packed WeekDate in the set, in no order */
+    public void forEach(IntConsumer action) {
+        for (int key : keys) {
+            if (key != EMPTY) {
+                action.accept(key);
+            }
+        }
+    }
+
+    /** @return The packed WeekDates in the set, in no order */
+    public int[] toArray() {
+        int[] packed = new int[size];
+        int i = 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                packed[i++] = key;
+            }
+        }
+        return packed;
+    }
+
+    /** @return The slot holding key, or the empty slot it would go in */
+    private static int find(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key, mask);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(int key, int mask) {
+        // Spread the day bits and the hourly time bits over the table
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /** @return A power of two table size that holds expected at half load */
+    private static int tableSize(int expected) {
+        int size = MIN_CAPACITY;
+        while (size < expected * 2) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = keys;
+        keys = new int[capacity];
+        for (int key : old) {
+            if (key != EMPTY) {
+                keys[find(keys, key)] = key;
+            }
+        }
+    }
+}